@@ -1,6 +1,43 @@
 package com.example.short;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * Example 6: High CC + High Ce
@@ -27,24 +64,95 @@ public class APIGateway {
     private AuditLogger auditLogger;
     private RequestTransformer requestTransformer;
     
-    private final Map<String, String> routingTable = new HashMap<>();
-    private final Set<String> blacklistedIPs = new HashSet<>();
+    // Immutable snapshots, replaced on every change so requests read them without locks
+    private volatile PathRouter routingTable = PathRouter.EMPTY;
+    private volatile IpBlacklist blacklistedIPs = IpBlacklist.EMPTY;
+    
+    // Runs handleRequestAsync; backend calls block, so each gets a cheap virtual thread
+    private final ExecutorService requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    
+    // Backend calls in progress by cache key, shared by concurrent misses
+    private final Map<String, CompletableFuture<APIResponse>> inFlight = new ConcurrentHashMap<>();
+    private volatile long staleWhileRevalidateMillis = 0;
+    
+    private final GatewayMetrics metrics = new GatewayMetrics();
+    
+    // Idempotent routes whose requests may be sent to a second server
+    private final Map<String, HedgedRoute> hedgedRoutes = new ConcurrentHashMap<>();
+    private final AtomicLong hedgeableRequests = new AtomicLong();
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private volatile double hedgePercentile = 95;
+    private volatile double hedgeBudgetPercent = 5;
+    
+    // Request bodies are serialized into these when the HttpClient can stream
+    private final BufferPool bufferPool = new BufferPool(256, 1 << 20);
+    
+    // Probes dependencies and backends in parallel every second
+    private final HealthMonitor healthMonitor = new HealthMonitor(this::healthProbes, this::healthProbed,
+            requestExecutor, 1000, 500);
+    
+    // Backend health from the HealthCheckService, refreshed by healthMonitor
+    private final BackendHealthCache backendHealth = new BackendHealthCache(
+            server -> healthCheckService.isServerHealthy(server), healthMonitor::start);
+    
+    // When set, logging, audit and metrics calls run on its writer thread
+    private volatile AsyncEventSink eventSink;
     
     /**
      * Complex request handling method
      * Cyclomatic Complexity: 22+ due to nested conditions and routing logic
      */
     public APIResponse handleRequest(APIRequest request) {
+        long start = System.nanoTime();
+        try {
+            APIResponse response = process(request, this::forwardRequestNow).join();
+            metrics.recordRequest(routeOf(request), response.getStatusCode(), System.nanoTime() - start);
+            return response;
+        } catch (CompletionException e) {
+            // only reached if a logging or metrics call itself failed
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Same pipeline as {@link #handleRequest}, run on virtual threads. Retries wait
+     * on a scheduled delay instead of a sleeping thread, so a slow backend holds no
+     * threads between attempts.
+     */
+    public CompletableFuture<APIResponse> handleRequestAsync(APIRequest request) {
+        long start = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> process(request, this::forwardRequestAsync), requestExecutor)
+                .thenCompose(Function.identity())
+                .whenComplete((response, failure) -> {
+                    if (response != null) {
+                        metrics.recordRequest(routeOf(request), response.getStatusCode(), System.nanoTime() - start);
+                    }
+                });
+    }
+    
+    /**
+     * The request pipeline shared by the synchronous and asynchronous paths; they only
+     * differ in how a request is forwarded. With {@link #forwardRequestNow} every stage
+     * completes on the caller thread.
+     */
+    private CompletableFuture<APIResponse> process(APIRequest request,
+            BiFunction<APIRequest, String, CompletableFuture<APIResponse>> forwarder) {
         if (request == null) {
             metricsCollector.incrementInvalidRequests();
-            return new APIResponse(400, "Bad Request", null);
+            return respond(400, "Bad Request");
         }
         
         // IP blacklist check (CC +2)
         if (blacklistedIPs.contains(request.getClientIP())) {
-            auditLogger.logBlockedRequest(request);
+            emit(() -> auditLogger.logBlockedRequest(request));
             metricsCollector.incrementBlockedRequests();
-            return new APIResponse(403, "Forbidden", null);
+            return respond(403, "Forbidden");
         }
         
         // Security validation with retry logic (CC +4)
@@ -52,17 +160,17 @@ public class APIGateway {
             if (request.getRetryCount() < 3) {
                 if (securityValidator.canRetry(request.getToken())) {
                     APIRequest retryRequest = request.withIncrementedRetry();
-                    loggingService.logRetry(retryRequest);
-                    return handleRequest(retryRequest);
+                    emit(() -> loggingService.logRetry(retryRequest));
+                    return process(retryRequest, forwarder);
                 } else {
                     metricsCollector.incrementSecurityFailures();
-                    auditLogger.logSecurityFailure(request);
-                    return new APIResponse(401, "Unauthorized", null);
+                    emit(() -> auditLogger.logSecurityFailure(request));
+                    return respond(401, "Unauthorized");
                 }
             } else {
                 metricsCollector.incrementMaxRetriesExceeded();
                 alertManager.sendSecurityAlert("Max retries exceeded for token: " + request.getToken());
-                return new APIResponse(401, "Max retries exceeded", null);
+                return respond(401, "Max retries exceeded");
             }
         }
         
@@ -72,12 +180,12 @@ public class APIGateway {
             
             if (request.isPremiumClient()) {
                 if (rateLimiter.allowPremiumRequest(request.getClientId())) {
-                    loggingService.logPremiumBypass(request);
+                    emit(() -> loggingService.logPremiumBypass(request));
                 } else {
-                    return new APIResponse(429, "Premium rate limit exceeded", null);
+                    return respond(429, "Premium rate limit exceeded");
                 }
             } else {
-                return new APIResponse(429, "Rate limit exceeded", null);
+                return respond(429, "Rate limit exceeded");
             }
         }
         
@@ -87,76 +195,302 @@ public class APIGateway {
             try {
                 transformedRequest = requestTransformer.transform(request);
                 if (transformedRequest == null) {
-                    return new APIResponse(400, "Request transformation failed", null);
+                    return respond(400, "Request transformation failed");
                 }
             } catch (Exception e) {
-                loggingService.logError("Request transformation error", e);
-                return new APIResponse(500, "Internal transformation error", null);
+                emit(() -> loggingService.logError("Request transformation error", e));
+                return respond(500, "Internal transformation error");
             }
         }
+        final APIRequest forwardedRequest = transformedRequest;
         
         // Circuit breaker and load balancing logic (CC +6)
         if (circuitBreaker.isOpen()) {
             if (circuitBreaker.shouldAttemptReset()) {
                 String server = loadBalancer.getHealthyServer();
                 if (server != null) {
-                    try {
-                        APIResponse response = forwardRequest(transformedRequest, server);
-                        if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
-                            circuitBreaker.recordSuccess();
-                            cacheManager.cacheResponse(transformedRequest, response);
-                            metricsCollector.recordSuccessfulRequest(transformedRequest, response);
-                            return response;
-                        } else {
-                            circuitBreaker.recordFailure();
-                            return response;
+                    return forward(forwarder, forwardedRequest, server).handle((response, failure) -> {
+                        if (failure == null) {
+                            try {
+                                if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
+                                    circuitBreaker.recordSuccess();
+                                    cacheManager.cacheResponse(forwardedRequest, response);
+                                    emitMetric(() -> metricsCollector.recordSuccessfulRequest(forwardedRequest, response));
+                                    return response;
+                                } else {
+                                    circuitBreaker.recordFailure();
+                                    return response;
+                                }
+                            } catch (Exception e) {
+                                failure = e;
+                            }
                         }
-                    } catch (Exception e) {
                         circuitBreaker.recordFailure();
-                        loggingService.logError("Request forwarding failed", e);
+                        Exception error = asException(failure);
+                        emit(() -> loggingService.logError("Request forwarding failed", error));
                         return new APIResponse(503, "Service Unavailable", null);
-                    }
+                    });
                 } else {
                     alertManager.sendAlert("No healthy servers available");
-                    return new APIResponse(503, "No healthy servers", null);
+                    return respond(503, "No healthy servers");
                 }
             } else {
                 metricsCollector.incrementCircuitBreakerBlocked();
-                return new APIResponse(503, "Circuit breaker open", null);
+                return respond(503, "Circuit breaker open");
             }
         }
         
         // Normal request processing with fallbacks (CC +4)
+        String cacheKey;
+        CompletableFuture<APIResponse> flight = new CompletableFuture<>();
         try {
             // Check cache first
-            APIResponse cachedResponse = cacheManager.getCachedResponse(transformedRequest);
+            APIResponse cachedResponse = cacheManager.getCachedResponse(forwardedRequest);
             if (cachedResponse != null && !cachedResponse.isExpired()) {
                 metricsCollector.incrementCacheHits();
-                return cachedResponse;
+                metrics.recordCacheHit();
+                return CompletableFuture.completedFuture(cachedResponse);
             }
             
-            String server = loadBalancer.getNextServer();
-            if (server == null) {
-                return new APIResponse(503, "No servers available", null);
+            cacheKey = cacheManager.getCacheKey(forwardedRequest);
+            if (cachedResponse != null && isWithinStaleGrace(cachedResponse)) {
+                metricsCollector.incrementCacheHits();
+                metrics.recordStaleHit();
+                revalidate(forwardedRequest, cacheKey);
+                return CompletableFuture.completedFuture(cachedResponse);
             }
             
-            APIResponse response = forwardRequest(transformedRequest, server);
-            
-            // Cache successful responses
-            if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
-                cacheManager.cacheResponse(transformedRequest, response);
+            // Single flight: wait for a backend call already made for this key
+            metrics.recordCacheMiss();
+            CompletableFuture<APIResponse> existing = inFlight.putIfAbsent(cacheKey, flight);
+            if (existing != null) {
+                metrics.recordCoalesced();
+                return existing;
             }
-            
-            metricsCollector.recordRequest(transformedRequest, response);
-            auditLogger.logRequest(transformedRequest, response);
-            
-            return response;
-            
         } catch (Exception e) {
-            metricsCollector.incrementErrors();
-            loggingService.logError("Request processing failed", e);
-            alertManager.sendErrorAlert("Request processing failed: " + e.getMessage());
-            return new APIResponse(500, "Internal Server Error", null);
+            return CompletableFuture.completedFuture(processingFailed(e));
+        }
+        
+        lead(cacheKey, flight, fetch(forwardedRequest, forwarder));
+        return flight;
+    }
+    
+    /**
+     * Forwards to the next server, caching and recording the response
+     */
+    private CompletableFuture<APIResponse> fetch(APIRequest forwardedRequest,
+            BiFunction<APIRequest, String, CompletableFuture<APIResponse>> forwarder) {
+        String server;
+        try {
+            server = loadBalancer.getNextServer();
+            if (server == null) {
+                return respond(503, "No servers available");
+            }
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(processingFailed(e));
+        }
+        
+        return forward(forwarder, forwardedRequest, server).handle((response, failure) -> {
+            if (failure == null) {
+                try {
+                    // Cache successful responses
+                    if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
+                        cacheManager.cacheResponse(forwardedRequest, response);
+                    }
+                    
+                    emitMetric(() -> metricsCollector.recordRequest(forwardedRequest, response));
+                    emit(() -> auditLogger.logRequest(forwardedRequest, response));
+                    
+                    return response;
+                } catch (Exception e) {
+                    failure = e;
+                }
+            }
+            return processingFailed(asException(failure));
+        });
+    }
+    
+    /**
+     * Completes the in-flight future for a cache key from the backend call, after
+     * removing it so that later requests go to the cache the call just filled.
+     */
+    private void lead(String cacheKey, CompletableFuture<APIResponse> flight, CompletableFuture<APIResponse> call) {
+        call.whenComplete((response, failure) -> {
+            inFlight.remove(cacheKey, flight);
+            if (failure != null) {
+                flight.completeExceptionally(failure);
+            } else {
+                flight.complete(response);
+            }
+        });
+    }
+    
+    /**
+     * Refreshes an expired cache entry in the background, unless a call for its key
+     * is already in flight.
+     */
+    private void revalidate(APIRequest request, String cacheKey) {
+        CompletableFuture<APIResponse> flight = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(cacheKey, flight) != null) {
+            return;
+        }
+        lead(cacheKey, flight, CompletableFuture
+                .supplyAsync(() -> fetch(request, this::forwardRequestAsync), requestExecutor)
+                .thenCompose(Function.identity()));
+    }
+    
+    private boolean isWithinStaleGrace(APIResponse response) {
+        long grace = staleWhileRevalidateMillis;
+        return grace > 0 && System.currentTimeMillis() - response.getExpiryTime() <= grace;
+    }
+    
+    private CompletableFuture<APIResponse> forward(
+            BiFunction<APIRequest, String, CompletableFuture<APIResponse>> forwarder,
+            APIRequest request, String server) {
+        long start = System.nanoTime();
+        HedgedRoute hedged = hedgedRouteOf(request);
+        CompletableFuture<APIResponse> call = hedged != null
+                ? forwardHedged(request, server, hedged)
+                : forwarder.apply(request, server);
+        return call.whenComplete((response, failure) -> metrics.recordForward(System.nanoTime() - start));
+    }
+    
+    /**
+     * Forwards to {@code server} and, if it has not answered within the hedge delay and
+     * the hedge budget allows, also to a second server. The first success wins and the
+     * other attempt is cancelled: it makes no further retries, though a call already
+     * sent to the backend runs to its timeout. Both attempts use the asynchronous
+     * forwarder, also when called from {@link #handleRequest}.
+     */
+    private CompletableFuture<APIResponse> forwardHedged(APIRequest request, String server, HedgedRoute route) {
+        hedgeableRequests.incrementAndGet();
+        CompletableFuture<APIResponse> result = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(1);
+        AtomicReference<CompletableFuture<APIResponse>> hedge = new AtomicReference<>();
+        
+        CompletableFuture<APIResponse> primary = forwardRequestAsync(request, server);
+        primary.whenComplete((response, failure) -> settleHedged(result, running, response, failure, false));
+        result.whenComplete((response, failure) -> {
+            primary.cancel(false);
+            CompletableFuture<APIResponse> second = hedge.get();
+            if (second != null) {
+                second.cancel(false);
+            }
+        });
+        
+        long delay = route.delayNanos(hedgePercentile);
+        if (delay >= 0) {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS, requestExecutor).execute(() -> {
+                if (result.isDone() || !tryAcquireHedge()) {
+                    return;
+                }
+                String hedgeServer = loadBalancer.getNextServerExcluding(server);
+                if (hedgeServer == null) {
+                    return;
+                }
+                running.incrementAndGet();
+                metrics.recordHedge();
+                CompletableFuture<APIResponse> second = forwardRequestAsync(request, hedgeServer);
+                hedge.set(second);
+                second.whenComplete((response, failure) -> settleHedged(result, running, response, failure, true));
+                if (result.isDone()) {
+                    second.cancel(false);
+                }
+            });
+        }
+        return result;
+    }
+    
+    private void settleHedged(CompletableFuture<APIResponse> result, AtomicInteger running,
+            APIResponse response, Throwable failure, boolean isHedge) {
+        if (failure == null) {
+            if (result.complete(response) && isHedge) {
+                metrics.recordHedgeWin();
+            }
+        } else if (running.decrementAndGet() == 0) {
+            result.completeExceptionally(failure);
+        }
+    }
+    
+    /**
+     * Hedges may be at most {@code hedgeBudgetPercent} of hedgeable requests
+     */
+    private boolean tryAcquireHedge() {
+        for (;;) {
+            long sent = hedgesSent.get();
+            if ((sent + 1) * 100 > hedgeBudgetPercent * hedgeableRequests.get() + 100) {
+                return false;
+            }
+            if (hedgesSent.compareAndSet(sent, sent + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    private HedgedRoute hedgedRouteOf(APIRequest request) {
+        if (request.getPath() == null || hedgedRoutes.isEmpty()) {
+            return null;
+        }
+        String route = routingTable.matchRoute(request.getPath());
+        return route == null ? null : hedgedRoutes.get(route);
+    }
+    
+    private APIResponse processingFailed(Exception e) {
+        metricsCollector.incrementErrors();
+        emit(() -> loggingService.logError("Request processing failed", e));
+        alertManager.sendErrorAlert("Request processing failed: " + e.getMessage());
+        return new APIResponse(500, "Internal Server Error", null);
+    }
+    
+    /**
+     * Runs a logging or audit call, on the event sink's writer thread when asynchronous
+     * logging is enabled. These are never dropped or sampled: when the sink is full the
+     * caller waits.
+     */
+    private void emit(Runnable event) {
+        AsyncEventSink sink = eventSink;
+        if (sink != null) {
+            sink.publishReliably(event);
+        } else {
+            event.run();
+        }
+    }
+    
+    /**
+     * Like {@link #emit} for metrics calls, which the sink's overflow policy may drop
+     * or sample under load
+     */
+    private void emitMetric(Runnable event) {
+        AsyncEventSink sink = eventSink;
+        if (sink != null) {
+            sink.publish(event);
+        } else {
+            event.run();
+        }
+    }
+    
+    private static CompletableFuture<APIResponse> respond(int statusCode, String message) {
+        return CompletableFuture.completedFuture(new APIResponse(statusCode, message, null));
+    }
+    
+    /**
+     * Unwraps a failure from a future stage; errors are rethrown as the synchronous
+     * code would not have caught them either.
+     */
+    private static Exception asException(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return (Exception) cause;
+    }
+    
+    private CompletableFuture<APIResponse> forwardRequestNow(APIRequest request, String serverUrl) {
+        try {
+            return CompletableFuture.completedFuture(forwardRequest(request, serverUrl));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
         }
     }
     
@@ -172,17 +506,7 @@ public class APIGateway {
         
         for (int attempt = 0; attempt < maxRetries; attempt++) {
             try {
-                // Health check before forwarding
-                if (!healthCheckService.isServerHealthy(serverUrl)) {
-                    loadBalancer.markServerUnhealthy(serverUrl);
-                    throw new Exception("Server is unhealthy: " + serverUrl);
-                }
-                
-                // Forward the request
-                String requestBody = jsonMapper.serialize(request);
-                String responseBody = httpClient.post(serverUrl + request.getPath(), requestBody, timeout);
-                
-                APIResponse response = jsonMapper.deserialize(responseBody, APIResponse.class);
+                APIResponse response = forwardOnce(request, serverUrl, timeout);
                 
                 if (response != null) {
                     return response;
@@ -190,11 +514,12 @@ public class APIGateway {
                 
             } catch (Exception e) {
                 lastException = e;
-                loggingService.logWarning("Request attempt " + (attempt + 1) + " failed", e);
+                String message = "Request attempt " + (attempt + 1) + " failed";
+                emit(() -> loggingService.logWarning(message, e));
                 
                 if (attempt < maxRetries - 1) {
                     // Wait before retry
-                    Thread.sleep(1000 * (attempt + 1));
+                    Thread.sleep(retryDelayMillis(attempt));
                 }
             }
         }
@@ -202,22 +527,245 @@ public class APIGateway {
         throw new Exception("All retry attempts failed", lastException);
     }
     
+    /**
+     * Same attempts as {@link #forwardRequest}, each run on a virtual thread; the wait
+     * before a retry is a scheduled delay.
+     */
+    private CompletableFuture<APIResponse> forwardRequestAsync(APIRequest request, String serverUrl) {
+        CompletableFuture<APIResponse> result = new CompletableFuture<>();
+        try {
+            int timeout = configService.getServerTimeout(serverUrl);
+            int maxRetries = configService.getMaxRetries(serverUrl);
+            attemptForward(request, serverUrl, timeout, maxRetries, 0, null, result, requestExecutor);
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+    
+    private void attemptForward(APIRequest request, String serverUrl, int timeout, int maxRetries,
+            int attempt, Exception lastException, CompletableFuture<APIResponse> result, Executor executor) {
+        if (attempt >= maxRetries) {
+            result.completeExceptionally(new Exception("All retry attempts failed", lastException));
+            return;
+        }
+        executor.execute(() -> {
+            if (result.isDone()) {
+                return; // cancelled, e.g. the losing side of a hedged request
+            }
+            try {
+                runAttempt(request, serverUrl, timeout, maxRetries, attempt, lastException, result);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+    }
+    
+    private void runAttempt(APIRequest request, String serverUrl, int timeout, int maxRetries,
+            int attempt, Exception lastException, CompletableFuture<APIResponse> result) {
+        try {
+            APIResponse response = forwardOnce(request, serverUrl, timeout);
+            if (response != null) {
+                result.complete(response);
+            } else {
+                attemptForward(request, serverUrl, timeout, maxRetries, attempt + 1, lastException,
+                        result, Runnable::run);
+            }
+        } catch (Exception e) {
+            emit(() -> loggingService.logWarning("Request attempt " + (attempt + 1) + " failed", e));
+            
+            if (attempt < maxRetries - 1) {
+                // Wait before retry
+                Executor delayed = CompletableFuture.delayedExecutor(
+                        retryDelayMillis(attempt), TimeUnit.MILLISECONDS, requestExecutor);
+                attemptForward(request, serverUrl, timeout, maxRetries, attempt + 1, e, result, delayed);
+            } else {
+                result.completeExceptionally(new Exception("All retry attempts failed", e));
+            }
+        }
+    }
+    
+    private APIResponse forwardOnce(APIRequest request, String serverUrl, int timeout) throws Exception {
+        // Health check before forwarding, answered from the last background probe
+        if (!backendHealth.isHealthy(serverUrl)) {
+            loadBalancer.markServerUnhealthy(serverUrl);
+            throw new Exception("Server is unhealthy: " + serverUrl);
+        }
+        
+        // Forward the request
+        String url = serverUrl + request.getPath();
+        if (httpClient instanceof StreamingHttpClient) {
+            StreamingHttpClient client = (StreamingHttpClient) httpClient;
+            BufferPool.Buffer body = bufferPool.acquire();
+            APIResponse response = null;
+            try {
+                jsonMapper.serialize(request, body);
+                response = post(serverUrl, hedgedRouteOf(request), () -> {
+                    try (InputStream responseBody = client.post(url, body.array(), body.size(), timeout)) {
+                        return jsonMapper.deserialize(responseBody, APIResponse.class);
+                    }
+                });
+                return response;
+            } finally {
+                // after a failed or interrupted post the client may still be reading the
+                // body, so the buffer is left to the garbage collector instead of reused
+                if (response != null) {
+                    bufferPool.release(body);
+                }
+            }
+        }
+        String requestBody = jsonMapper.serialize(request);
+        return post(serverUrl, hedgedRouteOf(request),
+                () -> jsonMapper.deserialize(httpClient.post(url, requestBody, timeout), APIResponse.class));
+    }
+    
+    /**
+     * Runs one backend call, reporting it to the load balancer and the metrics, and
+     * its latency to {@code hedged} if the call succeeds and the route is hedged
+     */
+    private APIResponse post(String serverUrl, HedgedRoute hedged, Callable<APIResponse> call) throws Exception {
+        if (!loadBalancer.requestStarted(serverUrl)) {
+            throw new Exception("Circuit breaker open for server: " + serverUrl);
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            APIResponse response = call.call();
+            success = response != null && response.getStatusCode() < 500;
+            return response;
+        } finally {
+            long latency = System.nanoTime() - start;
+            loadBalancer.requestFinished(serverUrl, latency, success);
+            metrics.recordBackend(serverUrl, latency);
+            if (hedged != null && success) {
+                hedged.recordAttempt(latency);
+            }
+        }
+    }
+    
+    private static long retryDelayMillis(int attempt) {
+        return 1000L * (attempt + 1);
+    }
+    
     /**
      * Additional methods for configuration and monitoring
      */
-    public void addRoute(String path, String targetServer) {
+    /**
+     * Routes {@code path} and everything below it to {@code targetServer}; a "*"
+     * segment matches any one segment, e.g. "/users/&#42;/orders"
+     */
+    public synchronized void addRoute(String path, String targetServer) {
         if (path != null && targetServer != null) {
-            routingTable.put(path, targetServer);
+            routingTable = routingTable.with(path, targetServer);
+        }
+    }
+    
+    /**
+     * Returns the target of the longest route matching {@code path}, or null
+     */
+    public String resolveRoute(String path) {
+        return path == null ? null : routingTable.match(path);
+    }
+    
+    /**
+     * The route pattern {@code request} matches, which keys its metrics; all paths
+     * that match no route share {@link GatewayMetrics#OTHER_ROUTE}
+     */
+    private String routeOf(APIRequest request) {
+        String route = request == null || request.getPath() == null
+                ? null : routingTable.matchRoute(request.getPath());
+        return route != null ? route : GatewayMetrics.OTHER_ROUTE;
+    }
+    
+    /**
+     * Serves a cached response for up to this long after it expires while a single
+     * background call refreshes it. 0, the default, disables stale responses.
+     */
+    public void setStaleWhileRevalidate(long graceMillis) {
+        this.staleWhileRevalidateMillis = Math.max(0, graceMillis);
+    }
+    
+    /**
+     * Lets requests on {@code route} be hedged, where {@code route} is a pattern as
+     * given to {@link #addRoute}, e.g. "/users/&#42;". A request is hedged when the route
+     * it is routed by is that pattern, the same route that keys its metrics; a longer
+     * route that also matches takes precedence and must be enabled on its own. Only for
+     * idempotent routes: the backend may see such a request twice.
+     */
+    public void enableHedging(String route) {
+        if (route != null) {
+            hedgedRoutes.computeIfAbsent(route, r -> new HedgedRoute());
+        }
+    }
+    
+    public void disableHedging(String route) {
+        hedgedRoutes.remove(route);
+    }
+    
+    /**
+     * @param delayPercentile the percentile of the route's single-attempt latency after
+     *        which a second attempt is sent, 95 by default
+     * @param budgetPercent the most hedges, as a percentage of hedgeable requests, 5 by default
+     */
+    public void setHedgePolicy(double delayPercentile, double budgetPercent) {
+        this.hedgePercentile = delayPercentile;
+        this.hedgeBudgetPercent = budgetPercent;
+        hedgedRoutes.values().forEach(HedgedRoute::resetDelay);
+    }
+    
+    /**
+     * Moves logging, audit and metrics calls off the request path: requests enqueue
+     * them into a ring buffer of {@code capacity} events that a writer thread drains
+     * in batches of up to {@code batchSize}. {@code policy} decides what happens to
+     * metrics events while the buffer is full; logging and audit events always wait for
+     * space, so they are never lost. Replaces any sink enabled before, after
+     * writing its remaining events.
+     */
+    public synchronized void enableAsyncLogging(int capacity, int batchSize, AsyncEventSink.OverflowPolicy policy) {
+        AsyncEventSink previous = eventSink;
+        eventSink = new AsyncEventSink(capacity, batchSize, policy);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+    
+    /**
+     * Writes the events still buffered and goes back to logging on the request thread
+     */
+    public synchronized void disableAsyncLogging() {
+        AsyncEventSink previous = eventSink;
+        eventSink = null;
+        if (previous != null) {
+            previous.close();
         }
     }
     
+    /**
+     * Returns the asynchronous logging sink, e.g. for its dropped-event counts, or null
+     */
+    public AsyncEventSink getEventSink() {
+        return eventSink;
+    }
+    
+    /**
+     * Blocks an address or a CIDR range such as "10.0.0.0/8" or "2001:db8::/32"
+     */
     public void blacklistIP(String ipAddress) {
         if (ipAddress != null && !ipAddress.trim().isEmpty()) {
-            blacklistedIPs.add(ipAddress);
-            auditLogger.logIPBlacklisted(ipAddress);
+            synchronized (this) {
+                blacklistedIPs = blacklistedIPs.with(ipAddress);
+            }
+            emit(() -> auditLogger.logIPBlacklisted(ipAddress));
         }
     }
     
+    /**
+     * Counters and latency histograms recorded in process since the gateway started
+     */
+    public GatewayMetrics.Snapshot getMetricsSnapshot() {
+        return metrics.snapshot();
+    }
+    
     public GatewayStats getGatewayStats() {
         GatewayStats stats = new GatewayStats();
         stats.setTotalRequests(metricsCollector.getTotalRequests());
@@ -226,30 +774,58 @@ public class APIGateway {
         stats.setCacheHitRate(metricsCollector.getCacheHitRate());
         stats.setCircuitBreakerStatus(circuitBreaker.getStatus());
         
+        GatewayMetrics.Snapshot snapshot = metrics.snapshot();
+        stats.setCoalescedRequests(snapshot.getCoalesced());
+        stats.setStaleResponses(snapshot.getStaleHits());
+        stats.setMetrics(snapshot);
+        
+        AsyncEventSink sink = eventSink;
+        if (sink != null) {
+            stats.setDroppedEvents(sink.getDroppedCount() + sink.getSampledOutCount());
+        }
+        
         return stats;
     }
     
+    /**
+     * Returns the result of the latest background health check. Only the first call
+     * waits for the checks; it also starts the background monitor.
+     */
     public boolean performHealthCheck() {
-        try {
-            boolean allSystemsHealthy = true;
-            
-            if (!redisClient.isConnected()) {
-                allSystemsHealthy = false;
-            }
-            
-            if (!circuitBreaker.isHealthy()) {
-                allSystemsHealthy = false;
-            }
-            
-            if (!loadBalancer.hasHealthyServers()) {
-                allSystemsHealthy = false;
-            }
-            
-            return allSystemsHealthy;
-            
-        } catch (Exception e) {
-            loggingService.logError("Health check failed", e);
-            return false;
+        return getHealthSnapshot().isHealthy();
+    }
+    
+    /**
+     * Status and latency trend of every dependency and backend probe
+     */
+    public HealthMonitor.Snapshot getHealthSnapshot() {
+        healthMonitor.start();
+        HealthMonitor.Snapshot snapshot = healthMonitor.getSnapshot();
+        return snapshot != null ? snapshot : healthMonitor.probeNow();
+    }
+    
+    /**
+     * The probes run by healthMonitor each round. The gateway is healthy when all
+     * dependency probes pass; backend probes only update backendHealth.
+     */
+    private Map<String, HealthMonitor.Probe> healthProbes() {
+        Map<String, HealthMonitor.Probe> probes = new LinkedHashMap<>();
+        probes.put("redis", new HealthMonitor.Probe(() -> redisClient.isConnected(), true));
+        probes.put("circuitBreaker", new HealthMonitor.Probe(() -> circuitBreaker.isHealthy(), true));
+        probes.put("loadBalancer", new HealthMonitor.Probe(() -> loadBalancer.hasHealthyServers(), true));
+        for (String server : backendHealth.servers()) {
+            probes.put(server, new HealthMonitor.Probe(() -> healthCheckService.isServerHealthy(server), false));
+        }
+        return probes;
+    }
+    
+    private void healthProbed(String name, HealthMonitor.Result result) {
+        if (result.getError() != null) {
+            Exception error = result.getError();
+            emit(() -> loggingService.logError("Health check failed: " + name, error));
+        }
+        if (!result.isCritical()) {
+            backendHealth.update(name, result.isHealthy());
         }
     }
 }
@@ -308,6 +884,7 @@ class APIResponse {
     public int getStatusCode() { return statusCode; }
     public String getMessage() { return message; }
     public Object getData() { return data; }
+    public long getExpiryTime() { return expiryTime; }
     public boolean isExpired() { return System.currentTimeMillis() > expiryTime; }
 }
 
@@ -317,6 +894,10 @@ class GatewayStats {
     private long failedRequests;
     private double cacheHitRate;
     private String circuitBreakerStatus;
+    private long coalescedRequests;
+    private long staleResponses;
+    private GatewayMetrics.Snapshot metrics;
+    private long droppedEvents;
     
     // Getters and setters
     public void setTotalRequests(long total) { this.totalRequests = total; }
@@ -324,34 +905,1392 @@ class GatewayStats {
     public void setFailedRequests(long failed) { this.failedRequests = failed; }
     public void setCacheHitRate(double rate) { this.cacheHitRate = rate; }
     public void setCircuitBreakerStatus(String status) { this.circuitBreakerStatus = status; }
+    public void setCoalescedRequests(long coalesced) { this.coalescedRequests = coalesced; }
+    public void setStaleResponses(long stale) { this.staleResponses = stale; }
+    public void setMetrics(GatewayMetrics.Snapshot metrics) { this.metrics = metrics; }
+    public GatewayMetrics.Snapshot getMetrics() { return metrics; }
+    public void setDroppedEvents(long dropped) { this.droppedEvents = dropped; }
+    public long getDroppedEvents() { return droppedEvents; }
 }
 
-// External service interfaces (High Ce dependencies)
-interface HttpClient {
-    String post(String url, String body, int timeout) throws Exception;
-}
-
-interface ObjectMapper {
-    String serialize(Object obj) throws Exception;
-    <T> T deserialize(String json, Class<T> clazz) throws Exception;
-}
-
-interface RedisClient {
-    boolean isConnected();
-}
-
-interface MetricsCollector {
-    void incrementInvalidRequests();
-    void incrementBlockedRequests();
-    void incrementSecurityFailures();
-    void incrementMaxRetriesExceeded();
-    void incrementRateLimitExceeded();
-    void incrementCircuitBreakerBlocked();
-    void incrementCacheHits();
-    void incrementErrors();
-    void recordRequest(APIRequest request, APIResponse response);
-    void recordSuccessfulRequest(APIRequest request, APIResponse response);
-    
+/**
+ * In-process request metrics: LongAdder counters by status code, route and cache
+ * outcome, and latency histograms for whole requests, forwardRequest and each backend.
+ * Recording allocates nothing once a route or backend has been seen; {@link #snapshot}
+ * copies everything into an immutable view for export.
+ */
+class GatewayMetrics {
+    static final String OTHER_ROUTE = "other";
+    private static final int MAX_ROUTES = 1000;
+    
+    private final LongAdder[] statusCodes = new LongAdder[600];
+    private final Map<String, LongAdder> routes = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LatencyHistogram requestLatency = new LatencyHistogram();
+    private final LatencyHistogram forwardLatency = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> backendLatency = new ConcurrentHashMap<>();
+    
+    GatewayMetrics() {
+        for (int i = 0; i < statusCodes.length; i++) {
+            statusCodes[i] = new LongAdder();
+        }
+    }
+    
+    /**
+     * @param route the route template the request matched, not its raw path, so the
+     *              number of counters is bounded by the routing table
+     */
+    void recordRequest(String route, int statusCode, long latencyNanos) {
+        statusCodes[statusCode >= 0 && statusCode < statusCodes.length ? statusCode : 0].increment();
+        route(route).increment();
+        requestLatency.record(latencyNanos);
+    }
+    
+    void recordForward(long latencyNanos) {
+        forwardLatency.record(latencyNanos);
+    }
+    
+    void recordBackend(String server, long latencyNanos) {
+        LatencyHistogram histogram = backendLatency.get(server);
+        if (histogram == null) {
+            histogram = backendLatency.computeIfAbsent(server, s -> new LatencyHistogram());
+        }
+        histogram.record(latencyNanos);
+    }
+    
+    void recordCacheHit() {
+        cacheHits.increment();
+    }
+    
+    /**
+     * An expired entry served while it is refreshed; also counts as a hit
+     */
+    void recordStaleHit() {
+        cacheHits.increment();
+        staleHits.increment();
+    }
+    
+    void recordCacheMiss() {
+        cacheMisses.increment();
+    }
+    
+    /**
+     * A miss that waited for another request's backend call
+     */
+    void recordCoalesced() {
+        coalesced.increment();
+    }
+    
+    void recordHedge() {
+        hedges.increment();
+    }
+    
+    /**
+     * A hedge that answered before the first attempt
+     */
+    void recordHedgeWin() {
+        hedgeWins.increment();
+    }
+    
+    private LongAdder route(String name) {
+        String route = name == null ? OTHER_ROUTE : name;
+        LongAdder counter = routes.get(route);
+        if (counter == null) {
+            // a last guard against an oversized routing table
+            counter = routes.size() < MAX_ROUTES
+                    ? routes.computeIfAbsent(route, r -> new LongAdder())
+                    : routes.computeIfAbsent(OTHER_ROUTE, r -> new LongAdder());
+        }
+        return counter;
+    }
+    
+    Snapshot snapshot() {
+        Map<Integer, Long> byStatus = new TreeMap<>();
+        for (int i = 0; i < statusCodes.length; i++) {
+            long count = statusCodes[i].sum();
+            if (count > 0) {
+                byStatus.put(i, count);
+            }
+        }
+        Map<String, Long> byRoute = new TreeMap<>();
+        routes.forEach((route, counter) -> byRoute.put(route, counter.sum()));
+        Map<String, LatencyHistogram.Snapshot> byBackend = new TreeMap<>();
+        backendLatency.forEach((server, histogram) -> byBackend.put(server, histogram.snapshot()));
+        return new Snapshot(byStatus, byRoute, cacheHits.sum(), staleHits.sum(), cacheMisses.sum(),
+                coalesced.sum(), hedges.sum(), hedgeWins.sum(), requestLatency.snapshot(),
+                forwardLatency.snapshot(), byBackend);
+    }
+    
+    static final class Snapshot {
+        private final Map<Integer, Long> requestsByStatus;
+        private final Map<String, Long> requestsByRoute;
+        private final long cacheHits;
+        private final long staleHits;
+        private final long cacheMisses;
+        private final long coalesced;
+        private final long hedges;
+        private final long hedgeWins;
+        private final LatencyHistogram.Snapshot requestLatency;
+        private final LatencyHistogram.Snapshot forwardLatency;
+        private final Map<String, LatencyHistogram.Snapshot> backendLatency;
+        
+        Snapshot(Map<Integer, Long> requestsByStatus, Map<String, Long> requestsByRoute,
+                long cacheHits, long staleHits, long cacheMisses, long coalesced,
+                long hedges, long hedgeWins, LatencyHistogram.Snapshot requestLatency, LatencyHistogram.Snapshot forwardLatency,
+                Map<String, LatencyHistogram.Snapshot> backendLatency) {
+            this.requestsByStatus = Collections.unmodifiableMap(requestsByStatus);
+            this.requestsByRoute = Collections.unmodifiableMap(requestsByRoute);
+            this.cacheHits = cacheHits;
+            this.staleHits = staleHits;
+            this.cacheMisses = cacheMisses;
+            this.coalesced = coalesced;
+            this.hedges = hedges;
+            this.hedgeWins = hedgeWins;
+            this.requestLatency = requestLatency;
+            this.forwardLatency = forwardLatency;
+            this.backendLatency = Collections.unmodifiableMap(backendLatency);
+        }
+        
+        public Map<Integer, Long> getRequestsByStatus() { return requestsByStatus; }
+        public Map<String, Long> getRequestsByRoute() { return requestsByRoute; }
+        public long getCacheHits() { return cacheHits; }
+        public long getStaleHits() { return staleHits; }
+        public long getCacheMisses() { return cacheMisses; }
+        public long getCoalesced() { return coalesced; }
+        public long getHedges() { return hedges; }
+        public long getHedgeWins() { return hedgeWins; }
+        public LatencyHistogram.Snapshot getRequestLatency() { return requestLatency; }
+        public LatencyHistogram.Snapshot getForwardLatency() { return forwardLatency; }
+        public Map<String, LatencyHistogram.Snapshot> getBackendLatency() { return backendLatency; }
+        
+        @Override
+        public String toString() {
+            return "status=" + requestsByStatus + " routes=" + requestsByRoute
+                    + " cache[hits=" + cacheHits + " stale=" + staleHits + " misses=" + cacheMisses
+                    + " coalesced=" + coalesced + "] hedges=" + hedges + " hedgeWins=" + hedgeWins
+                    + " request{" + requestLatency + "} forward{"
+                    + forwardLatency + "} backends=" + backendLatency;
+        }
+    }
+}
+
+/**
+ * Latency of single backend attempts on one hedged route, which sets that route's
+ * hedge delay. Retries and their backoff are not included, and neither are other
+ * routes, so a slow route or a retry storm does not push the delay up for everyone.
+ */
+final class HedgedRoute {
+    private static final long MINIMUM_SAMPLES = 100;
+    private static final long RECOMPUTE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private final LatencyHistogram attempts = new LatencyHistogram();
+    private volatile long delay = -1;
+    private volatile long delayComputedAt = System.nanoTime();
+    
+    void recordAttempt(long latencyNanos) {
+        attempts.record(latencyNanos);
+    }
+    
+    /**
+     * The {@code percentile} of attempt latency, recomputed at most once a second; -1
+     * (don't hedge) until there are enough samples to trust it
+     */
+    long delayNanos(double percentile) {
+        long now = System.nanoTime();
+        if (delay < 0 || now - delayComputedAt > RECOMPUTE_NANOS) {
+            delayComputedAt = now;
+            delay = attempts.getCount() < MINIMUM_SAMPLES ? -1 : attempts.getPercentile(percentile);
+        }
+        return delay;
+    }
+    
+    void resetDelay() {
+        delay = -1;
+    }
+}
+
+/**
+ * A latency histogram with log-linear buckets in the style of HdrHistogram: exact
+ * below 64ns, then 32 buckets per power of two, i.e. within about 3% of the recorded
+ * value. Recording is one atomic increment per bucket plus count, sum and max.
+ */
+class LatencyHistogram {
+    private static final int LINEAR = 64;
+    private static final int SUB_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 5;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR + (63 - 6) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+    
+    static int indexOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (msb - 6) * SUB_BUCKETS + sub;
+    }
+    
+    /**
+     * The largest value that falls into bucket {@code index}
+     */
+    static long highestValueAt(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int msb = (index - LINEAR) / SUB_BUCKETS + 6;
+        int sub = (index - LINEAR) % SUB_BUCKETS;
+        long lowest = (1L << msb) | ((long) sub << (msb - SUB_BUCKET_BITS));
+        return lowest + (1L << (msb - SUB_BUCKET_BITS)) - 1;
+    }
+    
+    public long getCount() {
+        return count.sum();
+    }
+    
+    /**
+     * Same as {@code snapshot().getPercentile(percentile)}, without copying the buckets
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    public Snapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, count.sum(), sum.sum(), max.get());
+    }
+    
+    static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+        
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+        
+        public long getCount() { return count; }
+        public long getMax() { return max; }
+        public long getMean() { return count == 0 ? 0 : sum / count; }
+        
+        /**
+         * The value in nanoseconds that {@code percentile} percent of recorded values
+         * do not exceed, to the histogram's precision
+         */
+        public long getPercentile(double percentile) {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueAt(i), max);
+                }
+            }
+            return max;
+        }
+        
+        @Override
+        public String toString() {
+            return "n=" + count + " mean=" + getMean() + "ns p50=" + getPercentile(50)
+                    + "ns p99=" + getPercentile(99) + "ns p999=" + getPercentile(99.9)
+                    + "ns max=" + max + "ns";
+        }
+    }
+}
+
+/**
+ * Runs logging, audit and metrics calls on one background writer thread, so request
+ * threads only pay for an enqueue. Events go into a bounded ring buffer (Vyukov's
+ * MPSC queue: one CAS to claim a slot, no locks) and the writer runs them in batches,
+ * in the order each producer published them. It parks while the buffer is empty, so
+ * an event waits at most about {@link #FLUSH_INTERVAL_NANOS}.
+ *
+ * While the buffer is full, DROP discards new events and BLOCK makes the publisher
+ * wait for space. SAMPLE starts earlier: once the buffer is half full it keeps one
+ * in {@link #SAMPLE_RATE} events, and drops them all when it is full. The policy
+ * only applies to {@link #publish}; events that must never be lost, such as audit
+ * records, go through {@link #publishReliably}, which always waits. Every enqueue
+ * is timed.
+ */
+class AsyncEventSink {
+    enum OverflowPolicy { DROP, SAMPLE, BLOCK }
+    
+    static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    static final int SAMPLE_RATE = 10;
+    
+    private final int mask;
+    private final AtomicReferenceArray<Runnable> events;
+    // Slot i may be written at position p when sequences[i] == p, read when it is p + 1
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final int batchSize;
+    private final OverflowPolicy policy;
+    private final Thread writer;
+    private volatile boolean closed;
+    // publishers between their check of closed and the end of their enqueue
+    private final AtomicInteger publishing = new AtomicInteger();
+    
+    private final LongAdder published = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LatencyHistogram enqueueLatency = new LatencyHistogram();
+    
+    AsyncEventSink(int capacity, int batchSize, OverflowPolicy policy) {
+        if (capacity < 2 || batchSize < 1 || policy == null) {
+            throw new IllegalArgumentException("capacity must be at least 2, batchSize at least 1");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.events = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.batchSize = batchSize;
+        this.policy = policy;
+        this.writer = new Thread(this::writeLoop, "gateway-event-sink");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+    
+    /**
+     * Enqueues an event, or handles it according to the overflow policy if the buffer
+     * is full. After {@link #close} events run on the calling thread.
+     */
+    public void publish(Runnable event) {
+        publish(event, policy);
+    }
+    
+    /**
+     * Enqueues an event, waiting for space if the buffer is full, whatever the overflow
+     * policy. After {@link #close} events run on the calling thread.
+     */
+    public void publishReliably(Runnable event) {
+        publish(event, OverflowPolicy.BLOCK);
+    }
+    
+    private void publish(Runnable event, OverflowPolicy policy) {
+        long start = System.nanoTime();
+        publishing.incrementAndGet();
+        try {
+            if (closed) {
+                event.run();
+                return;
+            }
+            if (policy == OverflowPolicy.SAMPLE && size() > mask / 2
+                    && ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0) {
+                sampledOut.increment();
+            } else if (offer(event)) {
+                published.increment();
+            } else if (policy == OverflowPolicy.BLOCK) {
+                LockSupport.unpark(writer);
+                while (!offer(event)) {
+                    // nobody would ever make room; run it here rather than wait forever
+                    if (closed || !writer.isAlive()) {
+                        event.run();
+                        return;
+                    }
+                    LockSupport.parkNanos(10_000);
+                }
+                published.increment();
+            } else {
+                dropped.increment();
+            }
+        } finally {
+            publishing.decrementAndGet();
+        }
+        enqueueLatency.record(System.nanoTime() - start);
+    }
+    
+    private boolean offer(Runnable event) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    events.set(index, event);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // full
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+    
+    private void writeLoop() {
+        Runnable[] batch = new Runnable[batchSize];
+        while (true) {
+            int count = drain(batch);
+            if (count == 0) {
+                if (closed && tail.get() == head) {
+                    return;
+                }
+                LockSupport.parkNanos(this, FLUSH_INTERVAL_NANOS);
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                runEvent(batch[i]);
+                batch[i] = null;
+            }
+            written.add(count);
+        }
+    }
+    
+    /**
+     * Runs an event on the writer; nothing an event throws, not even an Error, may stop
+     * the writer, or every publisher waiting under BLOCK would wait forever
+     */
+    private void runEvent(Runnable event) {
+        try {
+            event.run();
+        } catch (Throwable e) {
+            failed.increment(); // nowhere left to log it
+        }
+    }
+    
+    /**
+     * Takes up to a batch of events; only the writer thread calls this
+     */
+    private int drain(Runnable[] batch) {
+        long position = head;
+        int count = 0;
+        while (count < batch.length) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                break; // empty, or the producer of this slot has not finished writing it
+            }
+            batch[count++] = events.get(index);
+            events.set(index, null);
+            sequences.set(index, position + mask + 1);
+            position++;
+        }
+        head = position;
+        return count;
+    }
+    
+    /**
+     * Stops accepting events and waits until the writer has run the buffered ones
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // a publisher that saw the sink open may still be enqueueing; once none is, the
+        // buffer holds everything they enqueued after the writer exited
+        while (publishing.get() > 0) {
+            LockSupport.parkNanos(10_000);
+        }
+        Runnable[] batch = new Runnable[batchSize];
+        for (int count = drain(batch); count > 0; count = drain(batch)) {
+            for (int i = 0; i < count; i++) {
+                runEvent(batch[i]);
+            }
+            written.add(count);
+        }
+    }
+    
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+    
+    public long getPublishedCount() { return published.sum(); }
+    public long getWrittenCount() { return written.sum(); }
+    public long getDroppedCount() { return dropped.sum(); }
+    public long getSampledOutCount() { return sampledOut.sum(); }
+    public long getFailedCount() { return failed.sum(); }
+    
+    /**
+     * Time spent in {@link #publish}, including any wait under BLOCK
+     */
+    public LatencyHistogram.Snapshot getEnqueueLatency() {
+        return enqueueLatency.snapshot();
+    }
+    
+    @Override
+    public String toString() {
+        return "AsyncEventSink{policy=" + policy + ", published=" + getPublishedCount() + ", written="
+                + getWrittenCount() + ", dropped=" + getDroppedCount() + ", sampledOut=" + getSampledOutCount()
+                + ", failed=" + getFailedCount() + ", enqueue=" + enqueueLatency.snapshot() + "}";
+    }
+}
+
+/**
+ * Maps request paths to targets by longest prefix in whole path segments, so a route
+ * also matches every path below it. A "*" segment in a route matches any one segment;
+ * where a literal and a wildcard route match equally far, the literal wins.
+ *
+ * A trie whose edges are path segments. It is immutable: {@link #with} copies only
+ * the nodes on the path of the new route, so readers never need a lock.
+ */
+final class PathRouter {
+    static final PathRouter EMPTY = new PathRouter(Node.EMPTY);
+    
+    private final Node root;
+    
+    private PathRouter(Node root) {
+        this.root = root;
+    }
+    
+    PathRouter with(String pattern, String target) {
+        return new PathRouter(insert(root, pattern, 0, target));
+    }
+    
+    String match(String path) {
+        Match best = new Match();
+        search(root, path, 0, 0, best);
+        return best.target;
+    }
+    
+    /**
+     * Returns the pattern of the route {@link #match} picks for {@code path}, e.g.
+     * "/users/&#42;/orders" for "/users/42/orders/7", or null if none matches
+     */
+    String matchRoute(String path) {
+        Match best = new Match();
+        search(root, path, 0, 0, best);
+        return best.route;
+    }
+    
+    private static Node insert(Node node, String pattern, int from, String target) {
+        int start = segmentStart(pattern, from);
+        if (start < 0) {
+            return new Node(node.segments, node.children, node.wildcard, target, pattern);
+        }
+        int end = segmentEnd(pattern, start);
+        if (end - start == 1 && pattern.charAt(start) == '*') {
+            Node wildcard = insert(node.wildcard != null ? node.wildcard : Node.EMPTY, pattern, end, target);
+            return new Node(node.segments, node.children, wildcard, node.target, node.route);
+        }
+        int i = find(node.segments, pattern, start, end);
+        if (i >= 0) {
+            Node[] children = node.children.clone();
+            children[i] = insert(children[i], pattern, end, target);
+            return new Node(node.segments, children, node.wildcard, node.target, node.route);
+        }
+        i = -(i + 1);
+        int n = node.segments.length;
+        String[] segments = new String[n + 1];
+        Node[] children = new Node[n + 1];
+        System.arraycopy(node.segments, 0, segments, 0, i);
+        System.arraycopy(node.children, 0, children, 0, i);
+        segments[i] = pattern.substring(start, end);
+        children[i] = insert(Node.EMPTY, pattern, end, target);
+        System.arraycopy(node.segments, i, segments, i + 1, n - i);
+        System.arraycopy(node.children, i, children, i + 1, n - i);
+        return new Node(segments, children, node.wildcard, node.target, node.route);
+    }
+    
+    private static void search(Node node, String path, int from, int depth, Match best) {
+        if (node.target != null && depth > best.depth) {
+            best.target = node.target;
+            best.route = node.route;
+            best.depth = depth;
+        }
+        int start = segmentStart(path, from);
+        if (start < 0) {
+            return;
+        }
+        int end = segmentEnd(path, start);
+        int i = find(node.segments, path, start, end);
+        if (i >= 0) {
+            search(node.children[i], path, end, depth + 1, best);
+        }
+        if (node.wildcard != null) {
+            search(node.wildcard, path, end, depth + 1, best);
+        }
+    }
+    
+    /**
+     * Binary search for path[start, end) without creating a substring
+     */
+    private static int find(String[] segments, String path, int start, int end) {
+        int low = 0;
+        int high = segments.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(segments[mid], path, start, end);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+    
+    /**
+     * Compares like {@link String#compareTo}
+     */
+    private static int compare(String segment, String path, int start, int end) {
+        int n = Math.min(segment.length(), end - start);
+        for (int k = 0; k < n; k++) {
+            int d = segment.charAt(k) - path.charAt(start + k);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return segment.length() - (end - start);
+    }
+    
+    /**
+     * Index of the next segment at or after {@code from}, or -1 at the end of the path
+     * or its query string
+     */
+    private static int segmentStart(String path, int from) {
+        int i = from;
+        while (i < path.length() && path.charAt(i) == '/') {
+            i++;
+        }
+        return i == path.length() || path.charAt(i) == '?' ? -1 : i;
+    }
+    
+    private static int segmentEnd(String path, int start) {
+        int i = start;
+        while (i < path.length() && path.charAt(i) != '/' && path.charAt(i) != '?') {
+            i++;
+        }
+        return i;
+    }
+    
+    private static final class Match {
+        String target;
+        String route;
+        int depth = -1;
+    }
+    
+    private static final class Node {
+        static final Node EMPTY = new Node(new String[0], new Node[0], null, null, null);
+        
+        final String[] segments;
+        final Node[] children;
+        final Node wildcard;
+        final String target;
+        // the pattern the target was added with
+        final String route;
+        
+        Node(String[] segments, Node[] children, Node wildcard, String target, String route) {
+            this.segments = segments;
+            this.children = children;
+            this.wildcard = wildcard;
+            this.target = target;
+            this.route = route;
+        }
+    }
+}
+
+/**
+ * A set of blocked IPv4 and IPv6 addresses and CIDR ranges. IPv4 addresses are stored
+ * as IPv4-mapped IPv6 addresses in one binary radix (Patricia) tree; a lookup walks
+ * at most one node per differing prefix. Entries that are not addresses are matched
+ * as exact strings. Immutable: {@link #with} copies only the nodes on one path.
+ */
+final class IpBlacklist {
+    static final IpBlacklist EMPTY = new IpBlacklist(null, Collections.emptySet());
+    
+    private static final long IPV4_MAPPED = 0xffff00000000L;
+    
+    private final Node root;
+    private final Set<String> others;
+    
+    private IpBlacklist(Node root, Set<String> others) {
+        this.root = root;
+        this.others = others;
+    }
+    
+    IpBlacklist with(String entry) {
+        String address = entry.trim();
+        int prefix = -1;
+        int slash = address.indexOf('/');
+        if (slash >= 0) {
+            try {
+                prefix = Integer.parseInt(address.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid CIDR range: " + entry);
+            }
+            address = address.substring(0, slash);
+        }
+        long[] bits = parse(address);
+        if (bits == null) {
+            if (slash >= 0) {
+                throw new IllegalArgumentException("Invalid CIDR range: " + entry);
+            }
+            Set<String> copy = new HashSet<>(others);
+            copy.add(entry);
+            return new IpBlacklist(root, Collections.unmodifiableSet(copy));
+        }
+        boolean ipv4 = address.indexOf(':') < 0;
+        int max = ipv4 ? 32 : 128;
+        if (prefix > max) {
+            throw new IllegalArgumentException("Invalid CIDR range: " + entry);
+        }
+        int length = prefix < 0 ? 128 : (ipv4 ? 96 + prefix : prefix);
+        return new IpBlacklist(insert(root, maskHi(bits[0], length), maskLo(bits[1], length), length), others);
+    }
+    
+    boolean contains(String ip) {
+        if (ip == null) {
+            return false;
+        }
+        if (!others.isEmpty() && others.contains(ip)) {
+            return true;
+        }
+        long[] bits = root == null ? null : parse(ip);
+        if (bits == null) {
+            return false;
+        }
+        Node node = root;
+        while (node != null) {
+            if (commonPrefix(node.hi, node.lo, bits[0], bits[1], node.length) < node.length) {
+                return false;
+            }
+            if (node.blocked) {
+                return true;
+            }
+            node = bit(bits[0], bits[1], node.length) == 0 ? node.zero : node.one;
+        }
+        return false;
+    }
+    
+    private static Node insert(Node node, long hi, long lo, int length) {
+        if (node == null) {
+            return new Node(hi, lo, length, true, null, null);
+        }
+        int common = commonPrefix(node.hi, node.lo, hi, lo, Math.min(node.length, length));
+        if (common == node.length) {
+            if (node.blocked) {
+                return node; // already inside a blocked range
+            }
+            if (length == node.length) {
+                return new Node(hi, lo, length, true, null, null);
+            }
+            return bit(hi, lo, node.length) == 0
+                    ? new Node(node.hi, node.lo, node.length, false, insert(node.zero, hi, lo, length), node.one)
+                    : new Node(node.hi, node.lo, node.length, false, node.zero, insert(node.one, hi, lo, length));
+        }
+        Node added = new Node(hi, lo, length, true, null, null);
+        if (common == length) {
+            return added; // the new range covers the whole subtree
+        }
+        return bit(hi, lo, common) == 0
+                ? new Node(maskHi(hi, common), maskLo(lo, common), common, false, added, node)
+                : new Node(maskHi(hi, common), maskLo(lo, common), common, false, node, added);
+    }
+    
+    /**
+     * Returns an address as 128 bits, IPv4 mapped into IPv6, or null if it isn't one.
+     * Both forms are parsed here, character by character, so nothing is ever resolved.
+     */
+    static long[] parse(String address) {
+        if (address.indexOf(':') < 0) {
+            long ipv4 = parseIPv4(address);
+            return ipv4 < 0 ? null : new long[] {0, IPV4_MAPPED | ipv4};
+        }
+        return parseIPv6(address);
+    }
+    
+    /**
+     * Parses eight groups of 1-4 hex digits separated by ':', with at most one "::"
+     * standing for one or more zero groups and optionally a dotted IPv4 address as the
+     * last 32 bits. Anything else, including zone ids ("%eth0"), returns null.
+     */
+    private static long[] parseIPv6(String address) {
+        int[] groups = new int[8];
+        int count = 0;
+        int gap = -1; // number of groups before the "::"
+        int n = address.length();
+        int i = 0;
+        if (address.startsWith("::")) {
+            gap = 0;
+            i = 2;
+        } else if (n > 0 && address.charAt(0) == ':') {
+            return null;
+        }
+        while (i < n) {
+            if (count == 8) {
+                return null;
+            }
+            int start = i;
+            int value = 0;
+            int digit;
+            while (i < n && i - start < 5 && (digit = Character.digit(address.charAt(i), 16)) >= 0) {
+                value = (value << 4) | digit;
+                i++;
+            }
+            if (i < n && address.charAt(i) == '.') {
+                long ipv4 = count > 6 ? -1 : parseIPv4(address.substring(start));
+                if (ipv4 < 0) {
+                    return null;
+                }
+                groups[count++] = (int) (ipv4 >>> 16);
+                groups[count++] = (int) (ipv4 & 0xffff);
+                break;
+            }
+            if (i == start || i - start > 4) {
+                return null;
+            }
+            groups[count++] = value;
+            if (i == n) {
+                break;
+            }
+            if (address.charAt(i) != ':' || ++i == n) {
+                return null;
+            }
+            if (address.charAt(i) == ':') {
+                if (gap >= 0) {
+                    return null;
+                }
+                gap = count;
+                i++;
+            }
+        }
+        if (gap < 0 ? count != 8 : count > 7) {
+            return null;
+        }
+        int[] full = groups;
+        if (gap >= 0) {
+            full = new int[8];
+            System.arraycopy(groups, 0, full, 0, gap);
+            System.arraycopy(groups, gap, full, 8 - (count - gap), count - gap);
+        }
+        long hi = 0;
+        long lo = 0;
+        for (int k = 0; k < 4; k++) {
+            hi = (hi << 16) | full[k];
+            lo = (lo << 16) | full[k + 4];
+        }
+        return new long[] {hi, lo};
+    }
+    
+    private static long parseIPv4(String address) {
+        long result = 0;
+        int part = -1;
+        int parts = 0;
+        for (int i = 0; i <= address.length(); i++) {
+            char c = i < address.length() ? address.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                part = (part < 0 ? 0 : part * 10) + (c - '0');
+                if (part > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && part >= 0 && parts < 4) {
+                result = (result << 8) | part;
+                part = -1;
+                parts++;
+            } else {
+                return -1;
+            }
+        }
+        return parts == 4 ? result : -1;
+    }
+    
+    private static long maskHi(long hi, int length) {
+        return length >= 64 ? hi : (length == 0 ? 0 : hi & (-1L << (64 - length)));
+    }
+    
+    private static long maskLo(long lo, int length) {
+        return length <= 64 ? 0 : (length == 128 ? lo : lo & (-1L << (128 - length)));
+    }
+    
+    private static int commonPrefix(long aHi, long aLo, long bHi, long bLo, int max) {
+        long x = aHi ^ bHi;
+        int common = x != 0 ? Long.numberOfLeadingZeros(x) : 64 + Long.numberOfLeadingZeros(aLo ^ bLo);
+        return Math.min(common, max);
+    }
+    
+    private static int bit(long hi, long lo, int index) {
+        return index < 64 ? (int) (hi >>> (63 - index)) & 1 : (int) (lo >>> (127 - index)) & 1;
+    }
+    
+    private static final class Node {
+        final long hi;
+        final long lo;
+        final int length;
+        final boolean blocked;
+        final Node zero;
+        final Node one;
+        
+        Node(long hi, long lo, int length, boolean blocked, Node zero, Node one) {
+            this.hi = hi;
+            this.lo = lo;
+            this.length = length;
+            this.blocked = blocked;
+            this.zero = zero;
+            this.one = one;
+        }
+    }
+}
+
+// External service interfaces (High Ce dependencies)
+interface HttpClient {
+    String post(String url, String body, int timeout) throws Exception;
+}
+
+/**
+ * An HttpClient that can send a body straight from a byte array and hand back the
+ * response as a stream, so forwarding needs no intermediate Strings
+ */
+interface StreamingHttpClient extends HttpClient {
+    /**
+     * Posts the first {@code length} bytes of {@code body}; the caller closes the
+     * returned stream. {@code body} is not used after this returns normally; if it
+     * throws, e.g. on a timeout, the request may still be reading it, so the caller
+     * must not reuse it.
+     */
+    InputStream post(String url, byte[] body, int length, int timeout) throws Exception;
+}
+
+/**
+ * Forwards with the JDK HttpClient over HTTP/2 where the backend supports it, so
+ * concurrent requests to a backend are multiplexed as streams over one connection.
+ * The JDK client keeps connections per backend origin and reuses them; HTTP/1.1
+ * backends get a keep-alive pool instead.
+ */
+class PooledHttp2Client implements StreamingHttpClient {
+    private final java.net.http.HttpClient client;
+    
+    PooledHttp2Client() {
+        this(Executors.newVirtualThreadPerTaskExecutor());
+    }
+    
+    PooledHttp2Client(Executor executor) {
+        this.client = java.net.http.HttpClient.newBuilder()
+                .version(java.net.http.HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(executor)
+                .build();
+    }
+    
+    @Override
+    public String post(String url, String body, int timeout) throws Exception {
+        HttpRequest request = request(url, timeout).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+    
+    @Override
+    public InputStream post(String url, byte[] body, int length, int timeout) throws Exception {
+        HttpRequest request = request(url, timeout)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body, 0, length))
+                .build();
+        // ofByteArray does not copy: body is only safe to reuse once send() has returned,
+        // since a timeout or interrupt leaves the exchange still reading it. Responses are
+        // small, and one byte[] costs less than ofInputStream's buffer queue.
+        return new ByteArrayInputStream(client.send(request, HttpResponse.BodyHandlers.ofByteArray()).body());
+    }
+    
+    private static HttpRequest.Builder request(String url, int timeout) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(timeout))
+                .header("Content-Type", "application/json");
+    }
+}
+
+/**
+ * A bounded pool of growable byte buffers that request bodies are serialized into.
+ * Buffers that grew beyond {@code maxRetainedBytes} are not pooled again.
+ */
+class BufferPool {
+    private final ArrayBlockingQueue<Buffer> free;
+    private final int maxRetainedBytes;
+    
+    BufferPool(int maxBuffers, int maxRetainedBytes) {
+        this.free = new ArrayBlockingQueue<>(maxBuffers);
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+    
+    Buffer acquire() {
+        Buffer buffer = free.poll();
+        return buffer != null ? buffer : new Buffer();
+    }
+    
+    void release(Buffer buffer) {
+        if (buffer.array().length <= maxRetainedBytes) {
+            buffer.reset();
+            free.offer(buffer);
+        }
+    }
+    
+    static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(4096);
+        }
+        
+        /**
+         * The backing array; only the first {@link #size()} bytes are written
+         */
+        byte[] array() {
+            return buf;
+        }
+    }
+}
+
+/**
+ * Caches whether each backend is healthy. A backend is probed synchronously the first
+ * time it is asked about; after that {@link HealthMonitor} keeps it up to date, so
+ * asking is a map lookup. A probe that throws counts as unhealthy.
+ */
+class BackendHealthCache {
+    private final Predicate<String> probe;
+    private final Runnable onFirstUse;
+    private final Map<String, Boolean> healthy = new ConcurrentHashMap<>();
+    
+    BackendHealthCache(Predicate<String> probe, Runnable onFirstUse) {
+        this.probe = probe;
+        this.onFirstUse = onFirstUse;
+    }
+    
+    boolean isHealthy(String server) {
+        Boolean status = healthy.get(server);
+        if (status == null) {
+            status = healthy.computeIfAbsent(server, this::probe);
+            onFirstUse.run();
+        }
+        return status;
+    }
+    
+    Set<String> servers() {
+        return healthy.keySet();
+    }
+    
+    void update(String server, boolean status) {
+        healthy.put(server, status);
+    }
+    
+    private boolean probe(String server) {
+        try {
+            return probe.test(server);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
+
+/**
+ * Runs health probes in the background, all of them in parallel and each with a
+ * timeout, and publishes the results as an immutable {@link Snapshot} that readers get
+ * with one volatile read. A probe still running from an earlier round is not started
+ * again; it counts as timed out until it returns. The latency of the last
+ * {@link #HISTORY} runs of each probe is kept so that a probe getting slower shows up
+ * in {@link Result#getTrend()} before it starts failing.
+ */
+class HealthMonitor {
+    static final int HISTORY = 60;
+    
+    private final Supplier<Map<String, Probe>> probes;
+    private final BiConsumer<String, Result> listener;
+    private final Executor executor;
+    private final long intervalMillis;
+    private final long timeoutMillis;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final Map<String, CompletableFuture<Boolean>> running = new ConcurrentHashMap<>();
+    private final Map<String, History> histories = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "gateway-health-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    /**
+     * @param probes the probes to run, asked for again every round
+     * @param listener told about the result of every probe after each round
+     * @param executor runs the probes themselves
+     */
+    HealthMonitor(Supplier<Map<String, Probe>> probes, BiConsumer<String, Result> listener, Executor executor,
+            long intervalMillis, long timeoutMillis) {
+        this.probes = probes;
+        this.listener = listener;
+        this.executor = executor;
+        this.intervalMillis = intervalMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+    
+    void start() {
+        if (!started.get() && started.compareAndSet(false, true)) {
+            scheduler.scheduleWithFixedDelay(this::runSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * The result of the latest round, or null before the first round finished. A
+     * snapshot older than three intervals, e.g. because the monitor was stopped,
+     * reports unhealthy.
+     */
+    Snapshot getSnapshot() {
+        Snapshot current = snapshot.get();
+        if (current != null && System.nanoTime() - current.takenAt > TimeUnit.MILLISECONDS.toNanos(3 * intervalMillis)) {
+            return new Snapshot(current.results, false, current.takenAt);
+        }
+        return current;
+    }
+    
+    /**
+     * Runs a round on the calling thread and returns its snapshot
+     */
+    synchronized Snapshot probeNow() {
+        Map<String, Probe> round = probes.get();
+        Map<String, CompletableFuture<Boolean>> futures = new LinkedHashMap<>();
+        Map<String, Long> starts = new HashMap<>();
+        for (Map.Entry<String, Probe> entry : round.entrySet()) {
+            String name = entry.getKey();
+            CompletableFuture<Boolean> previous = running.get(name);
+            if (previous != null && !previous.isDone()) {
+                futures.put(name, previous); // still stuck in an earlier round
+                continue;
+            }
+            BooleanSupplier check = entry.getValue().check;
+            CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(check::getAsBoolean, executor);
+            running.put(name, future);
+            starts.put(name, System.nanoTime());
+            futures.put(name, future);
+        }
+        
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Map<String, Result> results = new LinkedHashMap<>();
+        boolean healthy = true;
+        for (Map.Entry<String, CompletableFuture<Boolean>> entry : futures.entrySet()) {
+            String name = entry.getKey();
+            Probe probe = round.get(name);
+            Result result = await(name, entry.getValue(), starts.get(name), deadline, probe.critical);
+            results.put(name, result);
+            if (probe.critical && !result.isHealthy()) {
+                healthy = false;
+            }
+        }
+        histories.keySet().retainAll(round.keySet());
+        running.keySet().retainAll(round.keySet());
+        
+        Snapshot next = new Snapshot(Collections.unmodifiableMap(results), healthy, System.nanoTime());
+        snapshot.set(next);
+        results.forEach(listener);
+        return next;
+    }
+    
+    private Result await(String name, CompletableFuture<Boolean> future, Long start, long deadline, boolean critical) {
+        History history = histories.computeIfAbsent(name, n -> new History());
+        if (start == null) {
+            long latency = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            return new Result(false, critical, latency, true, null, history.add(latency));
+        }
+        boolean healthy = false;
+        boolean timedOut = false;
+        Exception error = null;
+        try {
+            healthy = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timedOut = true;
+        } catch (ExecutionException e) {
+            error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = e;
+        }
+        long latency = future.isDone() && !timedOut ? System.nanoTime() - start
+                : TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        return new Result(healthy, critical, latency, timedOut, error, history.add(latency));
+    }
+    
+    private void runSafely() {
+        try {
+            probeNow();
+        } catch (RuntimeException e) {
+            // keep the schedule alive; the stale snapshot reports unhealthy
+        }
+    }
+    
+    static final class Probe {
+        final BooleanSupplier check;
+        final boolean critical;
+        
+        /**
+         * @param critical whether the gateway is unhealthy when this probe fails
+         */
+        Probe(BooleanSupplier check, boolean critical) {
+            this.check = check;
+            this.critical = critical;
+        }
+    }
+    
+    static final class Result {
+        private final boolean healthy;
+        private final boolean critical;
+        private final long latencyNanos;
+        private final boolean timedOut;
+        private final Exception error;
+        private final double trend;
+        
+        Result(boolean healthy, boolean critical, long latencyNanos, boolean timedOut, Exception error,
+                double trend) {
+            this.healthy = healthy;
+            this.critical = critical;
+            this.latencyNanos = latencyNanos;
+            this.timedOut = timedOut;
+            this.error = error;
+            this.trend = trend;
+        }
+        
+        public boolean isHealthy() { return healthy; }
+        public boolean isCritical() { return critical; }
+        public long getLatencyNanos() { return latencyNanos; }
+        public boolean isTimedOut() { return timedOut; }
+        public Exception getError() { return error; }
+        
+        /**
+         * Mean latency of the newer half of the history divided by that of the older
+         * half: above 1 the probe is getting slower. 1 until the history is full.
+         */
+        public double getTrend() { return trend; }
+        
+        @Override
+        public String toString() {
+            return (healthy ? "UP" : timedOut ? "TIMEOUT" : "DOWN") + " " + latencyNanos / 1000 + "us trend="
+                    + String.format("%.2f", trend);
+        }
+    }
+    
+    static final class Snapshot {
+        private final Map<String, Result> results;
+        private final boolean healthy;
+        private final long takenAt;
+        
+        Snapshot(Map<String, Result> results, boolean healthy, long takenAt) {
+            this.results = results;
+            this.healthy = healthy;
+            this.takenAt = takenAt;
+        }
+        
+        public boolean isHealthy() { return healthy; }
+        public Map<String, Result> getResults() { return results; }
+        
+        /**
+         * When the round finished, in {@link System#nanoTime()} terms
+         */
+        public long getTakenAt() { return takenAt; }
+        
+        @Override
+        public String toString() {
+            return (healthy ? "UP " : "DOWN ") + results;
+        }
+    }
+    
+    /**
+     * The latest latencies of one probe; only the monitor thread adds to it
+     */
+    private static final class History {
+        private final long[] latencies = new long[HISTORY];
+        private int count;
+        
+        synchronized double add(long latency) {
+            latencies[count++ % HISTORY] = latency;
+            if (count < HISTORY) {
+                return 1.0;
+            }
+            long older = 0;
+            long newer = 0;
+            for (int i = 0; i < HISTORY; i++) {
+                long value = latencies[(count + i) % HISTORY]; // oldest first
+                if (i < HISTORY / 2) {
+                    older += value;
+                } else {
+                    newer += value;
+                }
+            }
+            return older == 0 ? 1.0 : (double) newer / older;
+        }
+    }
+}
+
+interface ObjectMapper {
+    String serialize(Object obj) throws Exception;
+    <T> T deserialize(String json, Class<T> clazz) throws Exception;
+    
+    /**
+     * Writes {@code obj} as UTF-8 JSON to {@code out}. Mappers that can stream, like
+     * Jackson's writeValue(OutputStream, Object), should override this.
+     */
+    default void serialize(Object obj, OutputStream out) throws Exception {
+        out.write(serialize(obj).getBytes(StandardCharsets.UTF_8));
+    }
+    
+    default <T> T deserialize(InputStream in, Class<T> clazz) throws Exception {
+        return deserialize(new String(in.readAllBytes(), StandardCharsets.UTF_8), clazz);
+    }
+}
+
+interface RedisClient {
+    boolean isConnected();
+}
+
+interface MetricsCollector {
+    void incrementInvalidRequests();
+    void incrementBlockedRequests();
+    void incrementSecurityFailures();
+    void incrementMaxRetriesExceeded();
+    void incrementRateLimitExceeded();
+    void incrementCircuitBreakerBlocked();
+    void incrementCacheHits();
+    void incrementErrors();
+    void recordRequest(APIRequest request, APIResponse response);
+    void recordSuccessfulRequest(APIRequest request, APIResponse response);
+    
     long getTotalRequests();
     long getSuccessfulRequests();
     long getFailedRequests();
@@ -368,6 +2307,226 @@ interface RateLimiter {
     boolean allowPremiumRequest(String clientId);
 }
 
+/**
+ * In-process {@link RateLimiter}: a token bucket per client id, with separate standard
+ * and premium tiers. Each bucket is a single atomic "theoretical arrival time" (GCRA),
+ * updated with one CAS, so a decision takes no lock. Buckets live in sharded maps;
+ * a full bucket carries no state, so buckets idle past their refill are dropped by a
+ * periodic sweep of each shard. The sweep runs on request threads, without a background
+ * thread, but each request scans at most {@code SWEEP_BATCH} buckets, so no request
+ * pays for a whole shard.
+ *
+ * With a {@link RateLimitSyncStore}, the counts admitted by this node are exchanged in
+ * batches with the other nodes, and what they admitted is charged to the local buckets.
+ */
+class TokenBucketRateLimiter implements RateLimiter {
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int SWEEP_BATCH = 64;
+    
+    private final Tier standard;
+    private final Tier premium;
+    private final RateLimitSyncStore syncStore;
+    private final long syncIntervalNanos;
+    private final Executor syncExecutor;
+    private final AtomicLong nextSync = new AtomicLong(System.nanoTime());
+    
+    /**
+     * @param standardBurst requests a standard client may make at once
+     * @param standardPerSecond sustained requests per second of a standard client
+     */
+    public TokenBucketRateLimiter(int standardBurst, double standardPerSecond,
+            int premiumBurst, double premiumPerSecond) {
+        this(standardBurst, standardPerSecond, premiumBurst, premiumPerSecond, null, 0, null);
+    }
+    
+    /**
+     * Also exchanges admitted counts with {@code syncStore} at most every
+     * {@code syncIntervalMillis}, on {@code syncExecutor}
+     */
+    public TokenBucketRateLimiter(int standardBurst, double standardPerSecond,
+            int premiumBurst, double premiumPerSecond,
+            RateLimitSyncStore syncStore, long syncIntervalMillis, Executor syncExecutor) {
+        int shards = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+        this.standard = new Tier("standard", standardBurst, standardPerSecond, shards);
+        this.premium = new Tier("premium", premiumBurst, premiumPerSecond, shards);
+        this.syncStore = syncStore;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.syncExecutor = syncExecutor;
+    }
+    
+    @Override
+    public boolean allowRequest(String clientId) {
+        return acquire(standard, clientId);
+    }
+    
+    @Override
+    public boolean allowPremiumRequest(String clientId) {
+        return acquire(premium, clientId);
+    }
+    
+    private boolean acquire(Tier tier, String clientId) {
+        long now = System.nanoTime();
+        boolean allowed = tier.tryAcquire(clientId, now, syncStore != null);
+        if (syncStore != null) {
+            long due = nextSync.get();
+            if (now - due >= 0 && nextSync.compareAndSet(due, now + syncIntervalNanos)) {
+                syncExecutor.execute(this::sync);
+            }
+        }
+        return allowed;
+    }
+    
+    /**
+     * Sends the counts admitted since the last sync and charges what other nodes admitted
+     */
+    public void sync() {
+        standard.sync(syncStore);
+        premium.sync(syncStore);
+    }
+    
+    private static final class Tier {
+        final String name;
+        final long intervalNanos;
+        final long burstNanos;
+        final Shard[] shards;
+        
+        Tier(String name, int burst, double perSecond, int shardCount) {
+            if (burst < 1 || perSecond <= 0) {
+                throw new IllegalArgumentException("burst and rate must be positive");
+            }
+            this.name = name;
+            this.intervalNanos = Math.max(1, (long) (1_000_000_000L / perSecond));
+            this.burstNanos = intervalNanos * burst;
+            this.shards = new Shard[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = new Shard();
+            }
+        }
+        
+        boolean tryAcquire(String clientId, long now, boolean count) {
+            int h = clientId.hashCode();
+            Shard shard = shards[(h ^ (h >>> 16)) & (shards.length - 1)];
+            shard.sweepIfDue(now, burstNanos);
+            Bucket bucket = shard.buckets.get(clientId);
+            if (bucket == null) {
+                bucket = shard.buckets.computeIfAbsent(clientId, id -> new Bucket(now));
+            }
+            if (!bucket.tryAcquire(now, intervalNanos, burstNanos)) {
+                return false;
+            }
+            if (count) {
+                bucket.admitted.incrementAndGet();
+            }
+            return true;
+        }
+        
+        void sync(RateLimitSyncStore store) {
+            Map<String, Long> admitted = new HashMap<>();
+            for (Shard shard : shards) {
+                shard.buckets.forEach((clientId, bucket) -> {
+                    long n = bucket.admitted.getAndSet(0);
+                    if (n > 0) {
+                        admitted.put(clientId, n);
+                    }
+                });
+            }
+            Map<String, Long> remote;
+            try {
+                remote = store.exchange(name, admitted);
+            } catch (RuntimeException e) {
+                // keep the counts for the next sync
+                admitted.forEach((clientId, n) -> bucketFor(clientId).admitted.addAndGet(n));
+                throw e;
+            }
+            long now = System.nanoTime();
+            remote.forEach((clientId, n) -> bucketFor(clientId).charge(n, now, intervalNanos));
+        }
+        
+        private Bucket bucketFor(String clientId) {
+            int h = clientId.hashCode();
+            Shard shard = shards[(h ^ (h >>> 16)) & (shards.length - 1)];
+            return shard.buckets.computeIfAbsent(clientId, id -> new Bucket(System.nanoTime()));
+        }
+    }
+    
+    private static final class Shard {
+        final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+        final AtomicBoolean sweeping = new AtomicBoolean();
+        volatile long nextSweep = System.nanoTime() + SWEEP_INTERVAL_NANOS;
+        // position of the sweep in progress; only used by the thread holding sweeping
+        private Iterator<Map.Entry<String, Bucket>> sweepCursor;
+        
+        /**
+         * Once a sweep is due, each call scans the next {@code SWEEP_BATCH} buckets until
+         * the whole shard has been covered; calls racing with one that holds the cursor
+         * skip it rather than wait.
+         */
+        void sweepIfDue(long now, long burstNanos) {
+            if (now - nextSweep < 0 || !sweeping.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (sweepCursor == null) {
+                    sweepCursor = buckets.entrySet().iterator();
+                }
+                for (int i = 0; i < SWEEP_BATCH; i++) {
+                    if (!sweepCursor.hasNext()) {
+                        sweepCursor = null;
+                        nextSweep = now + SWEEP_INTERVAL_NANOS;
+                        return;
+                    }
+                    Map.Entry<String, Bucket> entry = sweepCursor.next();
+                    Bucket bucket = entry.getValue();
+                    // a bucket refilled long ago is the same as a new one; a request racing
+                    // with its removal may go uncharged, which is one request at most
+                    if (bucket.admitted.get() == 0 && now - bucket.tat.get() > burstNanos) {
+                        buckets.remove(entry.getKey(), bucket);
+                    }
+                }
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+    
+    private static final class Bucket {
+        final AtomicLong tat;
+        final AtomicLong admitted = new AtomicLong();
+        
+        Bucket(long now) {
+            this.tat = new AtomicLong(now);
+        }
+        
+        boolean tryAcquire(long now, long intervalNanos, long burstNanos) {
+            for (;;) {
+                long current = tat.get();
+                long next = Math.max(current, now) + intervalNanos;
+                if (next - now > burstNanos) {
+                    return false;
+                }
+                if (tat.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+        
+        void charge(long requests, long now, long intervalNanos) {
+            tat.accumulateAndGet(requests * intervalNanos, (current, cost) -> Math.max(current, now) + cost);
+        }
+    }
+}
+
+/**
+ * Shared counters for {@link TokenBucketRateLimiter}, e.g. backed by Redis
+ */
+interface RateLimitSyncStore {
+    /**
+     * Adds the counts this node admitted per client id since its last exchange and
+     * returns the counts the other nodes admitted over the same period
+     */
+    Map<String, Long> exchange(String tier, Map<String, Long> admitted);
+}
+
 interface CircuitBreaker {
     boolean isOpen();
     boolean shouldAttemptReset();
@@ -382,6 +2541,325 @@ interface LoadBalancer {
     String getNextServer();
     void markServerUnhealthy(String server);
     boolean hasHealthyServers();
+    
+    /**
+     * A server other than {@code excluded}, or null if there is none
+     */
+    default String getNextServerExcluding(String excluded) {
+        for (int i = 0; i < 3; i++) {
+            String server = getNextServer();
+            if (server == null || !server.equals(excluded)) {
+                return server;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Called before each attempt to forward a request to {@code server}. Returns false
+     * if the backend refuses the call now, e.g. its breaker is half-open and out of
+     * probe permits; the attempt is then not made and {@link #requestFinished} is not
+     * called.
+     */
+    default boolean requestStarted(String server) {
+        return true;
+    }
+    
+    /**
+     * Called after each attempt; {@code success} is false for exceptions and 5xx responses
+     */
+    default void requestFinished(String server, long latencyNanos, boolean success) {
+    }
+}
+
+/**
+ * Picks backends by peak-EWMA latency times outstanding requests, comparing two
+ * random candidates (power of two choices). Each backend has its own
+ * {@link BackendCircuitBreaker}; backends whose breaker is open are skipped, so one
+ * degraded node is routed around instead of failing every request.
+ */
+class AdaptiveLoadBalancer implements LoadBalancer {
+    private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long UNHEALTHY_NANOS = TimeUnit.SECONDS.toNanos(30);
+    
+    private final Map<String, Backend> backends = new ConcurrentHashMap<>();
+    private final Supplier<BackendCircuitBreaker> breakers;
+    
+    public AdaptiveLoadBalancer(Collection<String> servers) {
+        this(servers, () -> new BackendCircuitBreaker(100, 20, 50, 50, TimeUnit.SECONDS.toNanos(2),
+                TimeUnit.SECONDS.toNanos(30), 5));
+    }
+    
+    public AdaptiveLoadBalancer(Collection<String> servers, Supplier<BackendCircuitBreaker> breakers) {
+        this.breakers = breakers;
+        for (String server : servers) {
+            addServer(server);
+        }
+    }
+    
+    public void addServer(String server) {
+        backends.computeIfAbsent(server, s -> new Backend(s, breakers.get()));
+    }
+    
+    public void removeServer(String server) {
+        backends.remove(server);
+    }
+    
+    @Override
+    public String getNextServer() {
+        return getNextServerExcluding(null);
+    }
+    
+    @Override
+    public String getNextServerExcluding(String excluded) {
+        long now = System.nanoTime();
+        List<Backend> candidates = new ArrayList<>(backends.size());
+        for (Backend backend : backends.values()) {
+            if (backend.isAvailable(now) && !backend.server.equals(excluded)) {
+                candidates.add(backend);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(candidates.size());
+        if (candidates.size() > 1) {
+            int j = random.nextInt(candidates.size() - 1);
+            if (j >= i) {
+                j++;
+            }
+            if (candidates.get(j).cost() < candidates.get(i).cost()) {
+                i = j;
+            }
+        }
+        // a half-open probe permit is only taken in requestStarted, right before the
+        // call, so a request that fails or is cancelled before then can't leak one
+        return candidates.get(i).server;
+    }
+    
+    @Override
+    public String getHealthyServer() {
+        return getNextServer();
+    }
+    
+    @Override
+    public void markServerUnhealthy(String server) {
+        Backend backend = backends.get(server);
+        if (backend != null) {
+            backend.unhealthyUntil = System.nanoTime() + UNHEALTHY_NANOS;
+        }
+    }
+    
+    public void markServerHealthy(String server) {
+        Backend backend = backends.get(server);
+        if (backend != null) {
+            backend.unhealthyUntil = 0;
+        }
+    }
+    
+    @Override
+    public boolean hasHealthyServers() {
+        long now = System.nanoTime();
+        for (Backend backend : backends.values()) {
+            if (backend.isAvailable(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public boolean requestStarted(String server) {
+        Backend backend = backends.get(server);
+        if (backend == null) {
+            return true;
+        }
+        if (!backend.breaker.tryAcquirePermission()) {
+            return false;
+        }
+        backend.outstanding.incrementAndGet();
+        return true;
+    }
+    
+    @Override
+    public void requestFinished(String server, long latencyNanos, boolean success) {
+        Backend backend = backends.get(server);
+        if (backend != null) {
+            backend.outstanding.decrementAndGet();
+            backend.observe(latencyNanos);
+            backend.breaker.record(success, latencyNanos);
+        }
+    }
+    
+    public BackendCircuitBreaker getCircuitBreaker(String server) {
+        Backend backend = backends.get(server);
+        return backend == null ? null : backend.breaker;
+    }
+    
+    private static final class Backend {
+        final String server;
+        final BackendCircuitBreaker breaker;
+        final AtomicInteger outstanding = new AtomicInteger();
+        volatile long unhealthyUntil;
+        // peak EWMA of latency, updated under the lock, read without it
+        private volatile double ewmaNanos;
+        private long lastObserved = System.nanoTime();
+        
+        Backend(String server, BackendCircuitBreaker breaker) {
+            this.server = server;
+            this.breaker = breaker;
+        }
+        
+        boolean isAvailable(long now) {
+            return now - unhealthyUntil >= 0 && breaker.isCallPermitted();
+        }
+        
+        double cost() {
+            return ewmaNanos * (outstanding.get() + 1);
+        }
+        
+        synchronized void observe(long latencyNanos) {
+            long now = System.nanoTime();
+            if (latencyNanos > ewmaNanos) {
+                // jump to a latency peak at once, decay from it slowly
+                ewmaNanos = latencyNanos;
+            } else {
+                double w = Math.exp(-(double) (now - lastObserved) / DECAY_NANOS);
+                ewmaNanos = ewmaNanos * w + latencyNanos * (1 - w);
+            }
+            lastObserved = now;
+        }
+    }
+}
+
+/**
+ * A circuit breaker over a sliding window of the last {@code windowSize} calls to one
+ * backend. It opens when, after at least {@code minimumCalls}, the failure rate or the
+ * rate of calls slower than {@code slowCallNanos} reaches its threshold. After
+ * {@code openNanos} it lets {@code halfOpenCalls} probe calls through: one failure
+ * reopens it, all of them succeeding closes it.
+ */
+class BackendCircuitBreaker {
+    enum State { CLOSED, OPEN, HALF_OPEN }
+    
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+    
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    
+    private final byte[] window;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+    
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private int probePermits;
+    private int probeSuccesses;
+    
+    /**
+     * @param failureRateThreshold percentage of failed calls that opens the breaker
+     * @param slowCallRateThreshold percentage of slow calls that opens the breaker
+     */
+    public BackendCircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold,
+            int slowCallRateThreshold, long slowCallNanos, long openNanos, int halfOpenCalls) {
+        this.window = new byte[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallNanos;
+        this.openNanos = openNanos;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    /**
+     * Whether a call would be let through now, without using up a probe permit
+     */
+    public synchronized boolean isCallPermitted() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return System.nanoTime() - openedAt >= openNanos;
+            default:
+                return probePermits > 0;
+        }
+    }
+    
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            probePermits = halfOpenCalls;
+            probeSuccesses = 0;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return false;
+            default:
+                if (probePermits == 0) {
+                    return false;
+                }
+                probePermits--;
+                return true;
+        }
+    }
+    
+    public synchronized void record(boolean success, long latencyNanos) {
+        byte outcome = (byte) ((success ? SUCCESS : FAILURE) | (latencyNanos >= slowCallNanos ? SLOW : 0));
+        if (state == State.HALF_OPEN) {
+            if (outcome != SUCCESS) {
+                open();
+            } else if (++probeSuccesses >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return; // a call started before the breaker opened
+        }
+        if (calls == window.length) {
+            byte evicted = window[next];
+            failures -= evicted & FAILURE;
+            slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            calls++;
+        }
+        window[next] = outcome;
+        next = (next + 1) % window.length;
+        failures += outcome & FAILURE;
+        slowCalls += (outcome & SLOW) >> 1;
+        if (calls >= minimumCalls && (failures * 100 >= failureRateThreshold * calls
+                || slowCalls * 100 >= slowCallRateThreshold * calls)) {
+            open();
+        }
+    }
+    
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+    
+    private void close() {
+        state = State.CLOSED;
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
 }
 
 interface LoggingService {
@@ -403,6 +2881,17 @@ interface HealthCheckService {
 interface CacheManager {
     APIResponse getCachedResponse(APIRequest request);
     void cacheResponse(APIRequest request, APIResponse response);
+    
+    /**
+     * Identifies requests that share a cached response; concurrent misses for the
+     * same key share one backend call. The client and its credentials are part of
+     * the key, so one caller is never handed a response fetched for another. Parts
+     * are joined with NUL, which ids, tokens and paths never contain.
+     */
+    default String getCacheKey(APIRequest request) {
+        return request.getClientId() + "\0" + request.getToken() + "\0"
+                + request.getPath() + "\0" + request.getData();
+    }
 }
 
 interface AlertManager {
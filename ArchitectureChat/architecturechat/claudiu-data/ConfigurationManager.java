@@ -2,6 +2,10 @@ package com.example.problematic;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.io.*;
 import java.nio.file.*;
 import java.text.*;
@@ -66,9 +70,10 @@ public class ConfigurationManager {
     private AWSSecretsManager secretsManager;
 
     // Configuration caching and state
-    private final Map<String, ConfigValue> configCache = new ConcurrentHashMap<>();
-    private final Map<String, Long> configTimestamps = new ConcurrentHashMap<>();
-    private final Map<String, ConfigSource> configSources = new ConcurrentHashMap<>();
+    private static final int MAX_CACHED_KEYS = 10000;
+    private static final long NOT_FOUND_CACHE_MS = 30000;
+    private final ConfigCache configCache = new ConfigCache(MAX_CACHED_KEYS);
+    private final Map<String, long[]> sourceLoadTimes = new ConcurrentHashMap<>();
     private final Set<String> encryptedKeys = ConcurrentHashMap.newKeySet();
     private final Queue<ConfigChangeEvent> changeEvents = new ConcurrentLinkedQueue<>();
 
@@ -77,6 +82,27 @@ public class ConfigurationManager {
     private final Map<String, WatchService> fileWatchers = new ConcurrentHashMap<>();
     private final Map<String, Boolean> sourceAvailability = new ConcurrentHashMap<>();
 
+    // Runs source lookups for requests with parallelSourceLookup. At most MAX_LOOKUPS_PER_SOURCE
+    // run per source, so the pool is bounded; a lookup beyond that fails at once.
+    private static final int MAX_LOOKUPS_PER_SOURCE = 16;
+    private final ExecutorService sourceLookupExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "config-source-lookup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Semaphore> sourceLookupPermits = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> sourceTimeouts = new ConcurrentHashMap<>();
+
+    // Values resolved for getConfiguration(String), by normalized key, at most
+    // MAX_CACHED_KEYS of them. Immutable; newly resolved keys wait in pendingSnapshot
+    // and are merged in batches, so a burst of new keys costs one copy per batch.
+    private static final ConfigurationRequest DEFAULT_REQUEST = new ConfigurationRequest();
+    private static final long SNAPSHOT_REFRESH_INTERVAL_MS = 10000;
+    private static final int SNAPSHOT_MIN_BATCH = 64;
+    private volatile Map<String, SnapshotEntry> snapshot = Map.of();
+    private final Map<String, SnapshotEntry> pendingSnapshot = new ConcurrentHashMap<>();
+    private boolean snapshotRefreshScheduled;
+
     /**
      * Complex configuration loading method
      * CC: 45+ due to multiple sources and fallback logic
@@ -91,34 +117,40 @@ public class ConfigurationManager {
 
         String normalizedKey = normalizeConfigKey(key);
         ConfigValue cachedValue = null;
+        boolean knownMissing = false;
 
         // Cache validation with expiry logic (CC +6)
-        if (request.isUseCache() && configCache.containsKey(normalizedKey)) {
-            cachedValue = configCache.get(normalizedKey);
-            Long timestamp = configTimestamps.get(normalizedKey);
-
-            if (timestamp != null) {
-                long cacheAge = System.currentTimeMillis() - timestamp;
-                long maxAge = request.getCacheMaxAgeMs();
-
-                if (maxAge <= 0 || cacheAge < maxAge) {
-                    // Check if cached value is still valid
-                    if (cachedValue != null && !cachedValue.isExpired()) {
-                        return cachedValue;
-                    } else if (cachedValue != null && cachedValue.isExpired()) {
-                        // Remove expired cache entry
-                        configCache.remove(normalizedKey);
-                        configTimestamps.remove(normalizedKey);
-                    }
+        ConfigCache.Entry cached = request.isUseCache() ? configCache.get(normalizedKey) : null;
+        if (cached != null) {
+            if (cached.isFresh(request.getCacheMaxAgeMs(), System.currentTimeMillis())) {
+                configCache.recordHit();
+                if (!cached.isNotFound()) {
+                    return cached.getValue();
                 }
+                // Looked up recently and not found: skip the sources, go to the fallbacks
+                knownMissing = true;
+            } else if (cached.getValue().isExpired()) {
+                // Remove expired cache entry
+                configCache.remove(normalizedKey);
             }
+            if (!cached.isNotFound()) {
+                cachedValue = cached.getValue();
+            }
+        }
+        if (request.isUseCache() && !knownMissing) {
+            configCache.recordMiss();
         }
 
         // Configuration source priority handling (CC +15)
-        List<ConfigSource> sources = determinePrioritizedSources(request);
+        List<ConfigSource> sources = knownMissing ? Collections.emptyList() : determinePrioritizedSources(request);
         ConfigValue result = null;
         List<String> errors = new ArrayList<>();
 
+        // Parallel lookups: query every source now, take the answers in priority order (CC +2)
+        Map<ConfigSource, SourceLookup> lookups = request.isParallelSourceLookup() && sources.size() > 1
+                ? startSourceLookups(normalizedKey, sources, request)
+                : null;
+
         for (ConfigSource source : sources) {
             try {
                 // Check source availability first
@@ -128,71 +160,10 @@ public class ConfigurationManager {
                 }
 
                 // Load configuration from specific source
-                switch (source.getType()) {
-                    case FILE_PROPERTIES:
-                        result = loadFromPropertiesFile(normalizedKey, source, request);
-                        break;
-
-                    case FILE_YAML:
-                        result = loadFromYamlFile(normalizedKey, source, request);
-                        break;
-
-                    case FILE_JSON:
-                        result = loadFromJsonFile(normalizedKey, source, request);
-                        break;
-
-                    case FILE_XML:
-                        result = loadFromXmlFile(normalizedKey, source, request);
-                        break;
-
-                    case SPRING_ENVIRONMENT:
-                        result = loadFromSpringEnvironment(normalizedKey, source, request);
-                        break;
-
-                    case SPRING_CLOUD_CONFIG:
-                        result = loadFromSpringCloudConfig(normalizedKey, source, request);
-                        break;
-
-                    case CONSUL:
-                        result = loadFromConsul(normalizedKey, source, request);
-                        break;
-
-                    case ZOOKEEPER:
-                        result = loadFromZookeeper(normalizedKey, source, request);
-                        break;
-
-                    case ETCD:
-                        result = loadFromEtcd(normalizedKey, source, request);
-                        break;
-
-                    case VAULT:
-                        result = loadFromVault(normalizedKey, source, request);
-                        break;
-
-                    case REDIS:
-                        result = loadFromRedis(normalizedKey, source, request);
-                        break;
-
-                    case AWS_SECRETS_MANAGER:
-                        result = loadFromAwsSecretsManager(normalizedKey, source, request);
-                        break;
-
-                    case AWS_S3:
-                        result = loadFromS3(normalizedKey, source, request);
-                        break;
-
-                    case ENVIRONMENT_VARIABLES:
-                        result = loadFromEnvironmentVariables(normalizedKey, source, request);
-                        break;
-
-                    case SYSTEM_PROPERTIES:
-                        result = loadFromSystemProperties(normalizedKey, source, request);
-                        break;
-
-                    default:
-                        errors.add("Unknown source type: " + source.getType());
-                        continue;
-                }
+                SourceLookup lookup = lookups != null ? lookups.get(source) : null;
+                result = lookup != null
+                        ? lookup.await()
+                        : loadFromSource(normalizedKey, source, request);
 
                 // Value found, apply post-processing (CC +8)
                 if (result != null && result.getValue() != null) {
@@ -254,9 +225,8 @@ public class ConfigurationManager {
 
                     // Cache the result if caching is enabled
                     if (request.isUseCache()) {
-                        configCache.put(normalizedKey, result);
-                        configTimestamps.put(normalizedKey, System.currentTimeMillis());
-                        configSources.put(normalizedKey, source);
+                        configCache.put(normalizedKey,
+                                new ConfigCache.Entry(result, source, System.currentTimeMillis(), 0));
                     }
 
                     // Fire configuration change event if this is a refresh
@@ -270,9 +240,22 @@ public class ConfigurationManager {
                         notifyConfigurationListeners(event);
                     }
 
+                    cancelSourceLookups(lookups);
                     return result;
                 }
 
+            } catch (TimeoutException e) {
+                // Slow, not down: counted on its own and the source stays available
+                errors.add("Error loading from " + source.getName() + ": " + e.getMessage());
+                sourceTimeouts.computeIfAbsent(source.getName(), name -> new LongAdder()).increment();
+            } catch (RejectedExecutionException e) {
+                // Too many lookups in flight for this source; it is busy, not down
+                errors.add("Error loading from " + source.getName() + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                // The caller gave up, not the source: stop without touching availability
+                cancelSourceLookups(lookups);
+                Thread.currentThread().interrupt();
+                throw new ConfigurationException("Interrupted while loading configuration key: " + normalizedKey, e);
             } catch (Exception e) {
                 errors.add("Error loading from " + source.getName() + ": " + e.getMessage());
 
@@ -282,6 +265,8 @@ public class ConfigurationManager {
             }
         }
 
+        cancelSourceLookups(lookups);
+
         // No value found in any source, handle fallbacks (CC +5)
         if (request.getDefaultValue() != null) {
             result = new ConfigValue(
@@ -290,8 +275,7 @@ public class ConfigurationManager {
                     request.getDefaultValue().getClass());
 
             if (request.isUseCache()) {
-                configCache.put(normalizedKey, result);
-                configTimestamps.put(normalizedKey, System.currentTimeMillis());
+                configCache.put(normalizedKey, new ConfigCache.Entry(result, null, System.currentTimeMillis(), 0));
             }
 
             return result;
@@ -299,9 +283,54 @@ public class ConfigurationManager {
             throw new ConfigurationException(
                     "Required configuration key '" + normalizedKey + "' not found in any source. Errors: " +
                             String.join(", ", errors));
+        } else if (knownMissing) {
+            return cached.getValue();
         } else {
-            return new ConfigValue(null, "not_found", Object.class);
+            ConfigValue notFound = new ConfigValue(null, "not_found", Object.class);
+            // Only when every source answered; one that failed or timed out may have the key
+            if (request.isUseCache() && errors.isEmpty()) {
+                long now = System.currentTimeMillis();
+                configCache.put(normalizedKey, new ConfigCache.Entry(notFound, null, now, now + NOT_FOUND_CACHE_MS));
+            }
+            return notFound;
+        }
+    }
+
+    /**
+     * Same as {@link #getConfiguration(String, ConfigurationRequest)} with a default
+     * request, but answered from an immutable snapshot: once a key has been resolved,
+     * reading it is a map lookup by normalized key, with no lock and no clock call.
+     * Reads are counted on the entry and added to the cache hits in
+     * {@link #getConfigurationMetrics} at the next refresh round.
+     * Every {@value #SNAPSHOT_REFRESH_INTERVAL_MS} ms the snapshot drops keys nobody
+     * read since the last round and re-resolves those older than the default cache
+     * max age; {@link #refreshConfiguration} re-resolves its keys right away. Keys that
+     * are not found are not kept, and neither are new keys once the snapshot holds as
+     * many as the cache.
+     */
+    public ConfigValue getConfiguration(String key) {
+        if (key == null) {
+            return getConfiguration(key, DEFAULT_REQUEST);
+        }
+        String normalizedKey = normalizeConfigKey(key);
+        SnapshotEntry entry = snapshot.get(normalizedKey);
+        if (entry == null && !pendingSnapshot.isEmpty()) {
+            entry = pendingSnapshot.get(normalizedKey);
+        }
+        if (entry != null) {
+            entry.markRead();
+            return entry.value;
+        }
+        ConfigValue value = getConfiguration(key, DEFAULT_REQUEST);
+        if (value.getValue() != null && snapshot.size() + pendingSnapshot.size() < MAX_CACHED_KEYS) {
+            pendingSnapshot.put(normalizedKey, new SnapshotEntry(value, loadedAt(normalizedKey, value), true));
+            if (pendingSnapshot.size() >= Math.max(SNAPSHOT_MIN_BATCH, snapshot.size() / 8)) {
+                publish(Map.of(), Set.of());
+            } else {
+                scheduleSnapshotRefresh();
+            }
         }
+        return value;
     }
 
     /**
@@ -333,8 +362,9 @@ public class ConfigurationManager {
             } else if (refreshRequest.getSource() != null) {
                 // Refresh all keys from a specific source
                 keysToRefresh.addAll(
-                        configSources.entrySet().stream()
-                                .filter(entry -> entry.getValue().getName().equals(refreshRequest.getSource()))
+                        configCache.entries().entrySet().stream()
+                                .filter(entry -> entry.getValue().getSource() != null
+                                        && entry.getValue().getSource().getName().equals(refreshRequest.getSource()))
                                 .map(Map.Entry::getKey)
                                 .collect(Collectors.toSet()));
             }
@@ -352,7 +382,8 @@ public class ConfigurationManager {
                             // Remove keys from refresh list if their primary source is unhealthy
                             if (refreshRequest.isSkipUnhealthySources()) {
                                 keysToRefresh.removeIf(key -> {
-                                    ConfigSource keySource = configSources.get(key);
+                                    ConfigCache.Entry entry = configCache.peek(key);
+                                    ConfigSource keySource = entry != null ? entry.getSource() : null;
                                     return keySource != null && keySource.getName().equals(source.getName());
                                 });
                             }
@@ -400,7 +431,8 @@ public class ConfigurationManager {
             if (refreshRequest.isValidateAfterRefresh()) {
                 for (String key : refreshedKeys) {
                     try {
-                        ConfigValue currentValue = configCache.get(key);
+                        ConfigCache.Entry current = configCache.peek(key);
+                        ConfigValue currentValue = current != null ? current.getValue() : null;
                         if (currentValue != null && refreshRequest.getPostRefreshValidator() != null) {
                             if (!refreshRequest.getPostRefreshValidator().isValid(currentValue.getValue())) {
                                 errors.add("Post-refresh validation failed for key: " + key);
@@ -411,8 +443,8 @@ public class ConfigurationManager {
                                             oldValues.get(key),
                                             "rollback",
                                             oldValues.get(key).getClass());
-                                    configCache.put(key, oldValue);
-                                    configTimestamps.put(key, System.currentTimeMillis());
+                                    configCache.put(key, new ConfigCache.Entry(oldValue, current.getSource(),
+                                            System.currentTimeMillis(), 0));
                                 }
                             }
                         }
@@ -452,6 +484,10 @@ public class ConfigurationManager {
             errors.add("Unexpected refresh error: " + e.getMessage());
         }
 
+        if (!refreshedKeys.isEmpty()) {
+            refreshSnapshot(new HashSet<>(refreshedKeys));
+        }
+
         result.setSuccess(errors.isEmpty() || !refreshedKeys.isEmpty());
         result.setRefreshedKeys(refreshedKeys);
         result.setErrors(errors);
@@ -477,16 +513,17 @@ public class ConfigurationManager {
             Map<String, ConfigValue> configToBackup = new HashMap<>();
 
             if (backupRequest.isBackupAll()) {
-                configToBackup.putAll(configCache);
+                configToBackup.putAll(configCache.values());
             } else if (backupRequest.getSpecificKeys() != null) {
                 for (String key : backupRequest.getSpecificKeys()) {
-                    if (configCache.containsKey(key)) {
-                        configToBackup.put(key, configCache.get(key));
+                    ConfigCache.Entry entry = configCache.peek(key);
+                    if (entry != null && !entry.isNotFound()) {
+                        configToBackup.put(key, entry.getValue());
                     }
                 }
             } else if (backupRequest.getKeyPattern() != null) {
                 Pattern pattern = Pattern.compile(backupRequest.getKeyPattern());
-                configCache.entrySet().stream()
+                configCache.values().entrySet().stream()
                         .filter(entry -> pattern.matcher(entry.getKey()).matches())
                         .forEach(entry -> configToBackup.put(entry.getKey(), entry.getValue()));
             }
@@ -576,8 +613,29 @@ public class ConfigurationManager {
      * HIGH Ca - called by monitoring systems
      */
     public ConfigurationMetrics getConfigurationMetrics() {
-        // Complex metrics collection
-        return new ConfigurationMetrics();
+        ConfigurationMetrics metrics = new ConfigurationMetrics();
+        long hits = configCache.getHitCount();
+        long misses = configCache.getMissCount();
+        metrics.setTotalConfigKeys(configCache.size());
+        metrics.setHitCount(hits);
+        metrics.setMissCount(misses);
+        metrics.setEvictionCount(configCache.getEvictionCount());
+        metrics.setCacheHitRate(hits + misses == 0 ? 0 : hits * 100 / (hits + misses));
+
+        long totalNanos = 0;
+        long totalLoads = 0;
+        for (Map.Entry<String, long[]> entry : sourceLoadTimes.entrySet()) {
+            long[] times = entry.getValue();
+            synchronized (times) {
+                totalNanos += times[0];
+                totalLoads += times[1];
+                // a source's array is published before its first lookup is added
+                metrics.getSourceLoadTimes().put(entry.getKey(), times[1] == 0 ? 0 : times[0] / times[1] / 1000);
+            }
+        }
+        metrics.setAverageLoadTime(totalLoads == 0 ? 0 : totalNanos / totalLoads / 1000);
+        sourceTimeouts.forEach((name, count) -> metrics.getSourceTimeouts().put(name, count.sum()));
+        return metrics;
     }
 
     // Private helper methods with complex logic
@@ -656,6 +714,222 @@ public class ConfigurationManager {
         return null;
     }
 
+    /**
+     * Re-resolves the snapshot entries for {@code normalizedKeys}. When it is null, this
+     * is the periodic round instead: the entries' reads are added to the cache's hits,
+     * entries not read since the previous round are dropped and the rest are
+     * re-resolved once older than the default cache max age. The result, with any
+     * pending keys, is published in one swap.
+     */
+    private void refreshSnapshot(Set<String> normalizedKeys) {
+        Map<String, SnapshotEntry> current = new HashMap<>(snapshot);
+        current.putAll(pendingSnapshot);
+        long now = System.currentTimeMillis();
+        Map<String, SnapshotEntry> updated = new HashMap<>();
+        Set<String> removed = new HashSet<>();
+        for (Map.Entry<String, SnapshotEntry> each : current.entrySet()) {
+            SnapshotEntry entry = each.getValue();
+            boolean stale;
+            if (normalizedKeys != null) {
+                stale = normalizedKeys.contains(each.getKey());
+            } else {
+                long reads = entry.takeReads();
+                configCache.recordHits(each.getKey(), reads);
+                if (!entry.takePinned() && reads == 0) {
+                    removed.add(each.getKey());
+                    continue;
+                }
+                stale = now - entry.loadedAt >= DEFAULT_REQUEST.getCacheMaxAgeMs() || entry.value.isExpired();
+            }
+            if (!stale) {
+                continue;
+            }
+            // the entry is replaced or dropped, so count its reads now
+            configCache.recordHits(each.getKey(), entry.takeReads());
+            try {
+                ConfigValue value = getConfiguration(each.getKey(), DEFAULT_REQUEST);
+                if (value.getValue() != null) {
+                    updated.put(each.getKey(),
+                            new SnapshotEntry(value, loadedAt(each.getKey(), value), normalizedKeys != null));
+                } else {
+                    removed.add(each.getKey());
+                }
+            } catch (ConfigurationException e) {
+                removed.add(each.getKey());
+            }
+        }
+        publish(updated, removed);
+    }
+
+    /**
+     * When the value was loaded from its source: the cache entry's load time if it
+     * came from the cache, else now
+     */
+    private long loadedAt(String normalizedKey, ConfigValue value) {
+        ConfigCache.Entry cached = configCache.peek(normalizedKey);
+        return cached != null && cached.getValue() == value ? cached.getLoadedAt() : System.currentTimeMillis();
+    }
+
+    /**
+     * Merges the pending keys and then {@code updated} into the snapshot, without
+     * {@code removed}, in one swap
+     */
+    private synchronized void publish(Map<String, SnapshotEntry> updated, Set<String> removed) {
+        Map<String, SnapshotEntry> merged = new HashMap<>(pendingSnapshot);
+        if (!merged.isEmpty() || !updated.isEmpty() || !removed.isEmpty()) {
+            Map<String, SnapshotEntry> next = new HashMap<>(snapshot);
+            next.putAll(merged);
+            next.putAll(updated);
+            next.keySet().removeAll(removed);
+            snapshot = Map.copyOf(next);
+            // only now, so readers always find a merged key in one of the two maps
+            merged.forEach(pendingSnapshot::remove);
+            removed.forEach(pendingSnapshot::remove);
+        }
+        scheduleSnapshotRefresh();
+    }
+
+    private synchronized void scheduleSnapshotRefresh() {
+        if (!snapshotRefreshScheduled) {
+            snapshotRefreshScheduled = true;
+            refreshScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    refreshSnapshot(null);
+                } catch (RuntimeException e) {
+                    // keep refreshing; entries that failed stay as they were
+                }
+            }, SNAPSHOT_REFRESH_INTERVAL_MS, SNAPSHOT_REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private ConfigValue loadFromSource(String key, ConfigSource source, ConfigurationRequest request) {
+        long loadStart = System.nanoTime();
+        ConfigValue result;
+        switch (source.getType()) {
+            case FILE_PROPERTIES:
+                result = loadFromPropertiesFile(key, source, request);
+                break;
+
+            case FILE_YAML:
+                result = loadFromYamlFile(key, source, request);
+                break;
+
+            case FILE_JSON:
+                result = loadFromJsonFile(key, source, request);
+                break;
+
+            case FILE_XML:
+                result = loadFromXmlFile(key, source, request);
+                break;
+
+            case SPRING_ENVIRONMENT:
+                result = loadFromSpringEnvironment(key, source, request);
+                break;
+
+            case SPRING_CLOUD_CONFIG:
+                result = loadFromSpringCloudConfig(key, source, request);
+                break;
+
+            case CONSUL:
+                result = loadFromConsul(key, source, request);
+                break;
+
+            case ZOOKEEPER:
+                result = loadFromZookeeper(key, source, request);
+                break;
+
+            case ETCD:
+                result = loadFromEtcd(key, source, request);
+                break;
+
+            case VAULT:
+                result = loadFromVault(key, source, request);
+                break;
+
+            case REDIS:
+                result = loadFromRedis(key, source, request);
+                break;
+
+            case AWS_SECRETS_MANAGER:
+                result = loadFromAwsSecretsManager(key, source, request);
+                break;
+
+            case AWS_S3:
+                result = loadFromS3(key, source, request);
+                break;
+
+            case ENVIRONMENT_VARIABLES:
+                result = loadFromEnvironmentVariables(key, source, request);
+                break;
+
+            case SYSTEM_PROPERTIES:
+                result = loadFromSystemProperties(key, source, request);
+                break;
+
+            default:
+                throw new ConfigurationException("Unknown source type: " + source.getType());
+        }
+        recordSourceLoad(source, System.nanoTime() - loadStart);
+        return result;
+    }
+
+    /**
+     * Starts a lookup in every available source at once, each with a deadline of
+     * {@link ConfigurationRequest#getSourceTimeoutMs()} from when it was submitted. A
+     * source that already has {@value #MAX_LOOKUPS_PER_SOURCE} lookups running gets a
+     * lookup that fails with a {@link RejectedExecutionException} instead.
+     */
+    private Map<ConfigSource, SourceLookup> startSourceLookups(String key, List<ConfigSource> sources,
+            ConfigurationRequest request) {
+        Map<ConfigSource, SourceLookup> lookups = new IdentityHashMap<>();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(request.getSourceTimeoutMs());
+        for (ConfigSource source : sources) {
+            if (!isSourceAvailable(source)) {
+                continue;
+            }
+            Semaphore permits = sourceLookupPermits.computeIfAbsent(source.getName(),
+                    name -> new Semaphore(MAX_LOOKUPS_PER_SOURCE));
+            Future<ConfigValue> future;
+            if (!permits.tryAcquire()) {
+                future = CompletableFuture.failedFuture(new RejectedExecutionException(
+                        MAX_LOOKUPS_PER_SOURCE + " lookups already in flight"));
+            } else {
+                PermittedLookup lookup = new PermittedLookup(() -> loadFromSource(key, source, request), permits);
+                try {
+                    sourceLookupExecutor.execute(lookup);
+                    future = lookup;
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    future = CompletableFuture.failedFuture(e);
+                }
+            }
+            lookups.put(source, new SourceLookup(future, System.nanoTime() + timeoutNanos));
+        }
+        return lookups;
+    }
+
+    /**
+     * Interrupts the lookups still running once their answers are no longer needed
+     */
+    private void cancelSourceLookups(Map<ConfigSource, SourceLookup> lookups) {
+        if (lookups != null) {
+            for (SourceLookup lookup : lookups.values()) {
+                lookup.future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Adds a lookup to the total time and count kept per source for the metrics
+     */
+    private void recordSourceLoad(ConfigSource source, long nanos) {
+        long[] times = sourceLoadTimes.computeIfAbsent(source.getName(), name -> new long[2]);
+        synchronized (times) {
+            times[0] += nanos;
+            times[1]++;
+        }
+    }
+
     // More helper methods...
     private String normalizeConfigKey(String key) {
         return key.toLowerCase().replace("_", ".");
@@ -726,9 +1000,383 @@ public class ConfigurationManager {
             ConfigurationBackupRequest req) {
         return "repo/backup";
     }
+
+    private static final class SourceLookup {
+        final Future<ConfigValue> future;
+        final long deadline;
+
+        SourceLookup(Future<ConfigValue> future, long deadline) {
+            this.future = future;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Waits for the answer until the deadline; a source that misses it fails like
+         * one that threw
+         */
+        ConfigValue await() throws Exception {
+            try {
+                return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                throw new TimeoutException("no answer within the source timeout");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * A source lookup that gives its permit back exactly once: when the lookup returns,
+     * or when it is cancelled before it started, in which case it never runs
+     */
+    private static final class PermittedLookup extends FutureTask<ConfigValue> {
+        private final Semaphore permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean started;
+
+        PermittedLookup(Callable<ConfigValue> lookup, Semaphore permits) {
+            super(lookup);
+            this.permits = permits;
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            try {
+                super.run();
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        protected void done() {
+            // a running lookup keeps its permit until it returns, so the pool stays bounded
+            if (!started) {
+                release();
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+    private static final class SnapshotEntry {
+        final ConfigValue value;
+        final long loadedAt;
+        // reads since the last periodic refresh round
+        private final LongAdder reads = new LongAdder();
+        // kept through the next periodic round even if not read, e.g. just resolved
+        private volatile boolean pinned;
+
+        SnapshotEntry(ConfigValue value, long loadedAt, boolean pinned) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+            this.pinned = pinned;
+        }
+
+        void markRead() {
+            reads.increment();
+        }
+
+        /**
+         * Returns the number of reads since the last call, and starts over
+         */
+        long takeReads() {
+            return reads.sumThenReset();
+        }
+
+        boolean takePinned() {
+            boolean wasPinned = pinned;
+            pinned = false;
+            return wasPinned;
+        }
+    }
 }
 
 // Supporting classes
+
+/**
+ * The resolved configuration values by normalized key, at most {@code maxEntries} of
+ * them. Each entry keeps the value with the source it came from, when it was loaded
+ * and, for keys that were not found, when that answer expires.
+ *
+ * Eviction follows W-TinyLFU: new keys enter a small FIFO window; keys leaving it are
+ * admitted to the main region only if they have been asked for more often than the
+ * key the main region would evict, as estimated by a {@link FrequencySketch}. A burst
+ * of one-off keys therefore cannot push out the keys every service reads. Reads are a
+ * ConcurrentHashMap lookup plus a sketch update; only writes take the lock.
+ */
+class ConfigCache {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> unmodifiableKeys = Collections.unmodifiableSet(entries.keySet());
+    private final LinkedHashSet<String> window = new LinkedHashSet<>();
+    private final LinkedHashSet<String> main = new LinkedHashSet<>();
+    private final int maxWindow;
+    private final int maxMain;
+    private final FrequencySketch sketch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ConfigCache(int maxEntries) {
+        if (maxEntries < 2) {
+            throw new IllegalArgumentException("maxEntries must be at least 2");
+        }
+        this.maxWindow = Math.max(1, maxEntries / 100);
+        this.maxMain = maxEntries - maxWindow;
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+
+    /**
+     * Returns the entry for {@code key}, fresh or not, and counts the access
+     */
+    Entry get(String key) {
+        sketch.increment(key);
+        return entries.get(key);
+    }
+
+    /**
+     * Returns the entry for {@code key} without counting an access
+     */
+    Entry peek(String key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(String key, Entry entry) {
+        if (entries.put(key, entry) != null) {
+            return;
+        }
+        window.add(key);
+        if (window.size() > maxWindow) {
+            Iterator<String> oldest = window.iterator();
+            String candidate = oldest.next();
+            oldest.remove();
+            admit(candidate);
+        }
+    }
+
+    private void admit(String candidate) {
+        if (main.size() < maxMain) {
+            main.add(candidate);
+            return;
+        }
+        Iterator<String> oldest = main.iterator();
+        String victim = oldest.next();
+        oldest.remove();
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            entries.remove(victim);
+            main.add(candidate);
+        } else {
+            entries.remove(candidate);
+            main.add(victim); // second chance: the next candidate meets another victim
+        }
+        evictions.increment();
+    }
+
+    synchronized void remove(String key) {
+        if (entries.remove(key) != null && !window.remove(key)) {
+            main.remove(key);
+        }
+    }
+
+    Set<String> keySet() {
+        return unmodifiableKeys;
+    }
+
+    Map<String, Entry> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * A copy of the values that were found, by key
+     */
+    Map<String, ConfigValue> values() {
+        Map<String, ConfigValue> values = new HashMap<>();
+        for (Map.Entry<String, Entry> each : entries.entrySet()) {
+            if (!each.getValue().isNotFound()) {
+                values.put(each.getKey(), each.getValue().getValue());
+            }
+        }
+        return values;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    /**
+     * Counts {@code count} hits on {@code key} that were answered without {@link #get},
+     * e.g. from the snapshot, so that they still count towards the key's frequency
+     */
+    void recordHits(String key, long count) {
+        if (count <= 0) {
+            return;
+        }
+        hits.add(count);
+        // the sketch's counters stop at 15
+        for (long i = Math.min(count, 15); i > 0; i--) {
+            sketch.increment(key);
+        }
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    static final class Entry {
+        private final ConfigValue value;
+        private final ConfigSource source;
+        private final long loadedAt;
+        private final long expiresAt;
+
+        /**
+         * @param source where the value came from, or null for defaults and keys not found
+         * @param expiresAt when the entry stops being fresh in epoch millis, or 0 for no limit
+         */
+        Entry(ConfigValue value, ConfigSource source, long loadedAt, long expiresAt) {
+            this.value = value;
+            this.source = source;
+            this.loadedAt = loadedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        ConfigValue getValue() {
+            return value;
+        }
+
+        ConfigSource getSource() {
+            return source;
+        }
+
+        long getLoadedAt() {
+            return loadedAt;
+        }
+
+        boolean isNotFound() {
+            return value.getValue() == null;
+        }
+
+        boolean isFresh(long maxAgeMs, long now) {
+            return (maxAgeMs <= 0 || now - loadedAt < maxAgeMs)
+                    && (expiresAt == 0 || now < expiresAt)
+                    && !value.isExpired();
+        }
+    }
+}
+
+/**
+ * Estimates how often each key was accessed recently: a count-min sketch of 4-bit
+ * counters, four per key. All counters are halved once the number of increments
+ * reaches ten times the cache size, so old popularity fades.
+ */
+class FrequencySketch {
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = { 0x97cb3127, 0x9e3779b9, 0x85ebca6b, 0xc2b2ae35 };
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    FrequencySketch(int maxEntries) {
+        int size = Integer.highestOneBit(Math.max(maxEntries, 16) - 1) << 1;
+        this.table = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.sampleSize = 10 * maxEntries;
+    }
+
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int shift = counterShift(hash, i);
+            frequency = Math.min(frequency, (int) ((table.get(index) >>> shift) & 0xf));
+        }
+        return frequency;
+    }
+
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), counterShift(hash, i));
+        }
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int shift) {
+        while (true) {
+            long word = table.get(index);
+            if (((word >>> shift) & 0xf) == 0xf) {
+                return false;
+            }
+            if (table.compareAndSet(index, word, word + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    private synchronized void reset() {
+        if (additions.get() < sampleSize) {
+            return; // another thread just reset
+        }
+        for (int i = 0; i < table.length(); i++) {
+            long word;
+            do {
+                word = table.get(i);
+            } while (!table.compareAndSet(i, word, (word >>> 1) & RESET_MASK));
+        }
+        additions.set(additions.get() / 2);
+    }
+
+    private int indexOf(int hash, int i) {
+        int h = (hash ^ SEEDS[i]) * SEEDS[(i + 1) & 3];
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Which of the 16 counters in the word belongs to this key's row {@code i}
+     */
+    private static int counterShift(int hash, int i) {
+        return (((hash >>> (i * 8)) & 3) * 4 + i) * 4;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        return hash ^ (hash >>> 11);
+    }
+}
+
 class ConfigValue {
     private Object value;
     private String source;
@@ -774,6 +1422,8 @@ class ConfigurationRequest {
     private boolean failOnConversionError = false;
     private boolean failOnValidationError = false;
     private ConfigValidator validator;
+    private boolean parallelSourceLookup = false;
+    private long sourceTimeoutMs = 2000;
 
     // Getters and setters
     public boolean isUseCache() {
@@ -815,6 +1465,30 @@ class ConfigurationRequest {
     public ConfigValidator getValidator() {
         return validator;
     }
+
+    /**
+     * Whether a cache miss queries all sources at once instead of one after another.
+     * The highest-priority source holding a value still wins; the lookup returns as
+     * soon as every source above it has answered without one or timed out.
+     */
+    public boolean isParallelSourceLookup() {
+        return parallelSourceLookup;
+    }
+
+    public void setParallelSourceLookup(boolean parallelSourceLookup) {
+        this.parallelSourceLookup = parallelSourceLookup;
+    }
+
+    /**
+     * How long a parallel lookup waits for each source
+     */
+    public long getSourceTimeoutMs() {
+        return sourceTimeoutMs;
+    }
+
+    public void setSourceTimeoutMs(long sourceTimeoutMs) {
+        this.sourceTimeoutMs = sourceTimeoutMs;
+    }
 }
 
 interface ConfigValidator {
@@ -1124,9 +1798,13 @@ class ConfigurationHealthStatus {
 
 class ConfigurationMetrics {
     private long totalConfigKeys;
-    private long cacheHitRate;
-    private long averageLoadTime;
+    private long cacheHitRate; // percent
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long averageLoadTime; // microseconds per source lookup
     private Map<String, Long> sourceLoadTimes = new HashMap<>();
+    private Map<String, Long> sourceTimeouts = new HashMap<>(); // parallel lookups past the source timeout
     private int refreshCount;
     private int errorCount;
 
@@ -1134,18 +1812,58 @@ class ConfigurationMetrics {
         return totalConfigKeys;
     }
 
+    public void setTotalConfigKeys(long totalConfigKeys) {
+        this.totalConfigKeys = totalConfigKeys;
+    }
+
     public long getCacheHitRate() {
         return cacheHitRate;
     }
 
+    public void setCacheHitRate(long cacheHitRate) {
+        this.cacheHitRate = cacheHitRate;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public void setHitCount(long hitCount) {
+        this.hitCount = hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public void setMissCount(long missCount) {
+        this.missCount = missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public void setEvictionCount(long evictionCount) {
+        this.evictionCount = evictionCount;
+    }
+
     public long getAverageLoadTime() {
         return averageLoadTime;
     }
 
+    public void setAverageLoadTime(long averageLoadTime) {
+        this.averageLoadTime = averageLoadTime;
+    }
+
     public Map<String, Long> getSourceLoadTimes() {
         return sourceLoadTimes;
     }
 
+    public Map<String, Long> getSourceTimeouts() {
+        return sourceTimeouts;
+    }
+
     public int getRefreshCount() {
         return refreshCount;
     }
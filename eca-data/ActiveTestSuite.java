@@ -1,18 +1,32 @@
 package junit.extensions;
 
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestResult;
 import junit.framework.TestSuite;
 
+import org.junit.rules.TestTimings;
+import org.junit.runner.Description;
+
 /**
- * A TestSuite for active Tests. It runs each
- * test in a separate thread and waits until all
- * threads have terminated.
+ * A TestSuite for active Tests. It runs the tests
+ * concurrently on a bounded pool of threads and waits
+ * until all of them have finished.
  * -- Aarhus Radisson Scandinavian Center 11th floor
  */ 
 public class ActiveTestSuite extends TestSuite {
-	private volatile int fActiveTestDeathCount;
+	private int fMaxConcurrency= Runtime.getRuntime().availableProcessors();
+	private ExecutorService fExecutor;
+	private CountDownLatch fActiveTests;
+	private int fScheduledTests;
 
 	public ActiveTestSuite() {
 	}
@@ -29,20 +43,79 @@ public class ActiveTestSuite extends TestSuite {
 		super(theClass, name);
 	}
 	
+	/**
+	 * Sets how many tests may run at the same time.
+	 * Defaults to the number of available processors.
+	 */
+	public void setMaxConcurrency(int maxConcurrency) {
+		if (maxConcurrency < 1)
+			throw new IllegalArgumentException("Concurrency must be >= 1");
+		fMaxConcurrency= maxConcurrency;
+	}
+
+	public int getMaxConcurrency() {
+		return fMaxConcurrency;
+	}
+
 	@Override
 	public void run(TestResult result) {
-		fActiveTestDeathCount= 0;
-		super.run(result);
-		waitUntilFinished();
+		fActiveTests= new CountDownLatch(testCount());
+		fScheduledTests= 0;
+		fExecutor= Executors.newFixedThreadPool(fMaxConcurrency, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t= new Thread(r, getName() == null ? "ActiveTestSuite" : getName());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			runSlowestFirst(result);
+			// tests skipped because the result was stopped never finish
+			for (int i= fScheduledTests; i < testCount(); i++)
+				fActiveTests.countDown();
+			waitUntilFinished();
+		} finally {
+			fExecutor.shutdown();
+			fExecutor= null;
+		}
 	}
-	
+
+	/**
+	 * Like {@link TestSuite#run(TestResult)}, but when
+	 * {@link TestTimings#getDefault()} is enabled the tests expected to take
+	 * longest are started first.
+	 */
+	private void runSlowestFirst(TestResult result) {
+		TestTimings timings= TestTimings.getDefault();
+		if (timings == null) {
+			super.run(result);
+			return;
+		}
+
+		List<Test> tests= Collections.list(tests());
+		final Comparator<Description> order= timings.slowestFirst();
+		Collections.sort(tests, new Comparator<Test>() {
+			public int compare(Test o1, Test o2) {
+				return order.compare(TestTimings.describe(o1), TestTimings.describe(o2));
+			}
+		});
+		for (Test each : tests) {
+			if (result.shouldStop())
+				break;
+			runTest(each, result);
+		}
+	}
+
+	/**
+	 * Schedules the test on the pool of {@link #run(TestResult)}, or, when
+	 * called outside of it, runs the test on a thread of its own.
+	 */
 	@Override
 	public void runTest(final Test test, final TestResult result) {
-		Thread t= new Thread() {
-			@Override
+		Runnable task= new Runnable() {
 			public void run() {
 				try {
-					// inlined due to limitation in VA/Java 
+					// inlined due to limitation in VA/Java
 					//ActiveTestSuite.super.runTest(test, result);
 					test.run(result);
 				} finally {
@@ -50,21 +123,31 @@ public class ActiveTestSuite extends TestSuite {
 				}
 			}
 		};
-		t.start();
+		if (fExecutor == null) {
+			new Thread(task).start();
+			return;
+		}
+		fScheduledTests++;
+		fExecutor.execute(task);
 	}
 
-	synchronized void waitUntilFinished() {
-		while (fActiveTestDeathCount < testCount()) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				return; // ignore
-			}
+	/**
+	 * Waits for the scheduled tests. If the waiting thread is
+	 * interrupted, running tests are interrupted too and the
+	 * interrupt status is kept for the caller.
+	 */
+	void waitUntilFinished() {
+		try {
+			fActiveTests.await();
+		} catch (InterruptedException e) {
+			fExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
 		}
 	}
-	
-	synchronized public void runFinished() {
-		fActiveTestDeathCount++;
-		notifyAll();
+
+	public void runFinished() {
+		CountDownLatch activeTests= fActiveTests;
+		if (activeTests != null)
+			activeTests.countDown();
 	}
 }
\ No newline at end of file
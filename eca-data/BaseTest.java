@@ -68,6 +68,7 @@ import org.antlr.v4.tool.Grammar;
 import org.antlr.v4.tool.GrammarSemanticsMessage;
 import org.antlr.v4.tool.LexerGrammar;
 import org.antlr.v4.tool.Rule;
+import org.antlr.v4.tool.ast.GrammarRootAST;
 import org.junit.Before;
 import org.junit.rules.TestRule;
 import org.junit.rules.TestWatcher;
@@ -91,12 +92,15 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.PrintStream;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -119,11 +123,31 @@ public abstract class BaseTest {
 	// -J-Dorg.antlr.v4.test.BaseTest.level=FINE
 	private static final Logger LOGGER = Logger.getLogger(BaseTest.class.getName());
 
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	public static final String newline = System.getProperty("line.separator");
 	public static final String pathSep = System.getProperty("path.separator");
 
 	public static final boolean TEST_IN_SAME_PROCESS = Boolean.parseBoolean(System.getProperty("antlr.testinprocess"));
 
+	/** Generate, compile and run recognizers without touching tmpdir. Implies
+	 *  {@link #TEST_IN_SAME_PROCESS}. Grammars that pull in other grammars via
+	 *  tokenVocab or import still need the on-disk path.
+	 */
+	public static final boolean TEST_IN_MEMORY = Boolean.parseBoolean(System.getProperty("antlr.testinmemory"));
+
+	/** Reuse generated and compiled recognizers across tests and runs;
+	 *  -Dantlr.testcache=/path/to/dir turns it on. Forks may share the dir.
+	 */
+	public static final GeneratedGrammarCache GRAMMAR_CACHE =
+		System.getProperty("antlr.testcache")!=null ? new GeneratedGrammarCache(new File(System.getProperty("antlr.testcache"))) : null;
+
+	/** Identifies the tool build, not just its version string, so SNAPSHOT
+	 *  rebuilds get fresh cache entries.
+	 */
+	private static final String TOOL_FINGERPRINT =
+		GRAMMAR_CACHE!=null ? GeneratedGrammarCache.fingerprint(Tool.class) : null;
+
     /**
      * Build up the full classpath we need, including the surefire path (if present)
      */
@@ -136,6 +160,12 @@ public abstract class BaseTest {
      */
 	protected String stderrDuringParse;
 
+	/** Holds generated sources and compiled classes when {@link #TEST_IN_MEMORY} */
+	protected InMemoryJavaCompiler memoryCompiler;
+
+	/** Parser input when {@link #TEST_IN_MEMORY}; passed as args[0] to Test */
+	protected String memoryInput;
+
 	@org.junit.Rule
 	public final TestRule testWatcher = new TestWatcher() {
 
@@ -153,6 +183,9 @@ public abstract class BaseTest {
         tmpdir = new File(System.getProperty("java.io.tmpdir"),
 						  getClass().getSimpleName()+"-"+System.currentTimeMillis()).getAbsolutePath();
 //		tmpdir = "/tmp";
+		if (TEST_IN_MEMORY) {
+			memoryCompiler = new InMemoryJavaCompiler();
+		}
     }
 
     protected org.antlr.v4.Tool newTool(String[] args) {
@@ -165,6 +198,22 @@ public abstract class BaseTest {
 		return tool;
 	}
 
+	/** A tool whose output files land in {@link #memoryCompiler} */
+	protected Tool newInMemoryTool(String[] args) {
+		return new Tool(args) {
+			@Override
+			public Writer getOutputFileWriter(Grammar g, final String fileName) {
+				return new StringWriter() {
+					@Override
+					public void close() throws IOException {
+						super.close();
+						memoryCompiler.addSource(fileName, toString());
+					}
+				};
+			}
+		};
+	}
+
 	protected ATN createATN(Grammar g, boolean useSerializer) {
 		if ( g.atn==null ) {
 			semanticProcess(g);
@@ -339,6 +388,12 @@ public abstract class BaseTest {
 	 *  Had rules called r and modulo. Wouldn't compile til I changed to 'a'.
 	 */
 	protected boolean compile(String... fileNames) {
+		if ( memoryCompiler!=null ) {
+			Iterable<String> compileOptions =
+				Arrays.asList("-g", "-source", "1.6", "-target", "1.6", "-implicit:class", "-Xlint:-options", "-cp", CLASSPATH);
+			return memoryCompiler.compile(compileOptions, fileNames);
+		}
+
 		List<File> files = new ArrayList<File>();
 		for (String fileName : fileNames) {
 			File f = new File(tmpdir, fileName);
@@ -416,6 +471,10 @@ public abstract class BaseTest {
 
 	/** Return true if all is ok, no errors */
 	protected ErrorQueue antlr(String fileName, String grammarFileName, String grammarStr, boolean defaultListener, String... extraOptions) {
+		if ( memoryCompiler!=null ) {
+			return antlrInMemory(grammarFileName, grammarStr, defaultListener, extraOptions);
+		}
+
 		System.out.println("dir "+tmpdir);
 		mkdir(tmpdir);
 		writeFile(tmpdir, fileName, grammarStr);
@@ -458,6 +517,38 @@ public abstract class BaseTest {
 		return equeue;
 	}
 
+	/** Like {@link #antlr} but the grammar is parsed from grammarStr and the
+	 *  generated files are kept in {@link #memoryCompiler}.
+	 */
+	protected ErrorQueue antlrInMemory(String grammarFileName, String grammarStr, boolean defaultListener, String... extraOptions) {
+		Tool antlr = newInMemoryTool(extraOptions);
+		ErrorQueue equeue = new ErrorQueue(antlr);
+		antlr.addListener(equeue);
+		if (defaultListener) {
+			antlr.addListener(new DefaultToolListener(antlr));
+		}
+
+		GrammarRootAST root = antlr.parse(grammarFileName, new org.antlr.runtime.ANTLRStringStream(grammarStr));
+		if ( root!=null ) {
+			Grammar g = antlr.createGrammar(root);
+			g.fileName = grammarFileName;
+			antlr.process(g, true);
+		}
+
+		if ( !defaultListener && !equeue.errors.isEmpty() ) {
+			System.err.println("antlr reports errors from "+Arrays.toString(extraOptions));
+			for (int i = 0; i < equeue.errors.size(); i++) {
+				ANTLRMessage msg = equeue.errors.get(i);
+				System.err.println(msg);
+			}
+			System.out.println("!!!\ngrammar:");
+			System.out.println(grammarStr);
+			System.out.println("###");
+		}
+
+		return equeue;
+	}
+
 	protected String execLexer(String grammarFileName,
 							   String grammarStr,
 							   String lexerName,
@@ -477,7 +568,7 @@ public abstract class BaseTest {
 									  null,
 									  lexerName);
 		assertTrue(success);
-		writeFile(tmpdir, "input", input);
+		writeInputFile(input);
 		writeLexerTestFile(lexerName, showDFA);
 		compile("Test.java");
 		String output = execClass("Test");
@@ -536,10 +627,16 @@ public abstract class BaseTest {
 	}
 
 	public Class<?> loadClassFromTempDir(String name) throws Exception {
-		ClassLoader loader =
-			new URLClassLoader(new URL[] { new File(tmpdir).toURI().toURL() },
-							   ClassLoader.getSystemClassLoader());
-		return loader.loadClass(name);
+		return newTestClassLoader().loadClass(name);
+	}
+
+	/** Loads generated classes from tmpdir or from {@link #memoryCompiler} */
+	protected ClassLoader newTestClassLoader() throws MalformedURLException {
+		if ( memoryCompiler!=null ) {
+			return memoryCompiler.createClassLoader(ClassLoader.getSystemClassLoader());
+		}
+		return new URLClassLoader(new URL[] { new File(tmpdir).toURI().toURL() },
+								  ClassLoader.getSystemClassLoader());
 	}
 
 	public Class<? extends Lexer> loadLexerClassFromTempDir(String name) throws Exception {
@@ -563,7 +660,7 @@ public abstract class BaseTest {
 														lexerName,
 														"-visitor");
 		assertTrue(success);
-		writeFile(tmpdir, "input", input);
+		writeInputFile(input);
 		return rawExecRecognizer(parserName,
 								 lexerName,
 								 startRuleName,
@@ -588,6 +685,26 @@ public abstract class BaseTest {
 													boolean defaultListener,
 													String... extraOptions)
 	{
+		String cacheKey = null;
+		Map<String, byte[]> filesBefore = null;
+		if ( GRAMMAR_CACHE!=null ) {
+			cacheKey = getGrammarCacheKey(grammarFileName, grammarStr, parserName, lexerName, extraOptions);
+			Map<String, byte[]> cached = GRAMMAR_CACHE.load(cacheKey);
+			if ( cached!=null ) {
+				byte[] messages = cached.remove(GeneratedGrammarCache.TOOL_MESSAGES);
+				if ( messages!=null && messages.length>0 ) {
+					// replay what antlr() reported when the entry was made
+					if ( !defaultListener ) {
+						System.err.println("antlr reports warnings from "+Arrays.toString(extraOptions));
+					}
+					System.err.print(new String(messages, UTF8));
+				}
+				restoreGeneratedFiles(cached);
+				return true;
+			}
+			filesBefore = getGeneratedFiles();
+		}
+
 		ErrorQueue equeue =
 			antlr(grammarFileName, grammarFileName, grammarStr, defaultListener, extraOptions);
 		if (!equeue.errors.isEmpty()) {
@@ -609,9 +726,122 @@ public abstract class BaseTest {
 			}
 		}
 		boolean allIsWell = compile(files.toArray(new String[files.size()]));
+		if ( allIsWell && cacheKey!=null ) {
+			Map<String, byte[]> newFiles = getGeneratedFiles();
+			for (Map.Entry<String, byte[]> before : filesBefore.entrySet()) {
+				if ( Arrays.equals(before.getValue(), newFiles.get(before.getKey())) ) {
+					newFiles.remove(before.getKey());
+				}
+			}
+			newFiles.put(GeneratedGrammarCache.TOOL_MESSAGES, getToolMessages(equeue, defaultListener).getBytes(UTF8));
+			GRAMMAR_CACHE.store(cacheKey, newFiles);
+		}
 		return allIsWell;
 	}
 
+	/** The warnings antlr() wrote to stderr, one per line, in the form the
+	 *  active listener printed them.
+	 */
+	protected String getToolMessages(ErrorQueue equeue, boolean defaultListener) {
+		StringBuilder buf = new StringBuilder();
+		for (ANTLRMessage msg : equeue.warnings) {
+			if ( defaultListener ) {
+				String outputMsg = equeue.tool.errMgr.getMessageTemplate(msg).render();
+				if ( equeue.tool.errMgr.formatWantsSingleLineMessage() ) {
+					outputMsg = outputMsg.replace('\n', ' ');
+				}
+				buf.append(outputMsg);
+			}
+			else {
+				buf.append(msg);
+			}
+			buf.append('\n');
+		}
+		return buf.toString();
+	}
+
+	/** Key over everything that decides what antlr() and compile() produce:
+	 *  tool build and Java version, options, grammar text, and any grammars
+	 *  or .tokens files already in tmpdir that it might import.
+	 */
+	protected String getGrammarCacheKey(String grammarFileName,
+										String grammarStr,
+										@Nullable String parserName,
+										String lexerName,
+										String... extraOptions)
+	{
+		List<String> parts = new ArrayList<String>();
+		parts.add(Tool.VERSION);
+		parts.add(TOOL_FINGERPRINT);
+		parts.add(System.getProperty("java.specification.version"));
+		parts.add(grammarFileName);
+		parts.add(grammarStr);
+		parts.add(parserName);
+		parts.add(lexerName);
+		Collections.addAll(parts, extraOptions);
+		if ( memoryCompiler==null ) {
+			for (Map.Entry<String, byte[]> f : new TreeMap<String, byte[]>(getGeneratedFiles()).entrySet()) {
+				if ( f.getKey().endsWith(Tool.GRAMMAR_EXTENSION) || f.getKey().endsWith(".tokens") ) {
+					parts.add(f.getKey());
+					parts.add(new String(f.getValue(), UTF8));
+				}
+			}
+		}
+		return GeneratedGrammarCache.key(parts.toArray(new String[parts.size()]));
+	}
+
+	/** All files in tmpdir, or all sources and classes held in memory, by
+	 *  relative path.
+	 */
+	protected Map<String, byte[]> getGeneratedFiles() {
+		Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+		if ( memoryCompiler!=null ) {
+			for (Map.Entry<String, String> source : memoryCompiler.getSources().entrySet()) {
+				files.put(source.getKey(), source.getValue().getBytes(UTF8));
+			}
+			for (Map.Entry<String, byte[]> c : memoryCompiler.getClasses().entrySet()) {
+				files.put(c.getKey().replace('.', '/')+".class", c.getValue());
+			}
+			return files;
+		}
+
+		File dir = new File(tmpdir);
+		if ( dir.isDirectory() ) {
+			try {
+				GeneratedGrammarCache.readFiles(dir, "", files);
+			}
+			catch (IOException ioe) {
+				LOGGER.log(Level.WARNING, "can't read "+tmpdir, ioe);
+			}
+		}
+		return files;
+	}
+
+	protected void restoreGeneratedFiles(Map<String, byte[]> files) {
+		for (Map.Entry<String, byte[]> f : files.entrySet()) {
+			String name = f.getKey();
+			if ( memoryCompiler!=null ) {
+				if ( name.endsWith(".class") ) {
+					memoryCompiler.addClass(name.substring(0, name.length()-".class".length()).replace('/', '.'), f.getValue());
+				}
+				else {
+					memoryCompiler.addSource(name, new String(f.getValue(), UTF8));
+				}
+				continue;
+			}
+
+			File file = new File(tmpdir, name);
+			file.getParentFile().mkdirs();
+			try {
+				GeneratedGrammarCache.writeBytes(file, f.getValue());
+			}
+			catch (IOException ioe) {
+				System.err.println("can't write file");
+				ioe.printStackTrace(System.err);
+			}
+		}
+	}
+
 	protected String rawExecRecognizer(String parserName,
 									   String lexerName,
 									   String parserStartRuleName,
@@ -637,9 +867,10 @@ public abstract class BaseTest {
 	}
 
 	public String execClass(String className) {
-		if (TEST_IN_SAME_PROCESS) {
+		if (TEST_IN_SAME_PROCESS || memoryCompiler!=null) {
 			try {
-				ClassLoader loader = new URLClassLoader(new URL[] { new File(tmpdir).toURI().toURL() }, ClassLoader.getSystemClassLoader());
+				ClassLoader loader = newTestClassLoader();
+				String inputArg = memoryCompiler!=null ? memoryInput : new File(tmpdir, "input").getAbsolutePath();
                 final Class<?> mainClass = (Class<?>)loader.loadClass(className);
 				final Method mainMethod = mainClass.getDeclaredMethod("main", String[].class);
 				PipedInputStream stdoutIn = new PipedInputStream();
@@ -657,7 +888,7 @@ public abstract class BaseTest {
 						System.setErr(new PrintStream(stderrOut));
 						stdoutVacuum.start();
 						stderrVacuum.start();
-						mainMethod.invoke(null, (Object)new String[] { new File(tmpdir, "input").getAbsolutePath() });
+						mainMethod.invoke(null, (Object)new String[] { inputArg });
 					}
 					finally {
 						System.setErr(originalErr);
@@ -995,6 +1226,23 @@ public abstract class BaseTest {
 		}
 	}
 
+	/** Write a generated file to tmpdir, or keep it in {@link #memoryCompiler} */
+	protected void writeTempFile(String fileName, String content) {
+		if ( memoryCompiler!=null ) {
+			memoryCompiler.addSource(fileName, content);
+			return;
+		}
+		writeFile(tmpdir, fileName, content);
+	}
+
+	protected void writeInputFile(String input) {
+		if ( memoryCompiler!=null ) {
+			memoryInput = input;
+			return;
+		}
+		writeFile(tmpdir, "input", input);
+	}
+
 	protected void mkdir(String dir) {
 		File f = new File(dir);
 		f.mkdirs();
@@ -1011,7 +1259,7 @@ public abstract class BaseTest {
 			"\n" +
 			"public class Test {\n" +
 			"    public static void main(String[] args) throws Exception {\n" +
-			"        CharStream input = new ANTLRFileStream(args[0]);\n" +
+			"        CharStream input = new <if(inMemory)>ANTLRInputStream<else>ANTLRFileStream<endif>(args[0]);\n" +
 			"        <lexerName> lex = new <lexerName>(input);\n" +
 			"        CommonTokenStream tokens = new CommonTokenStream(lex);\n" +
 			"        <createParser>\n"+
@@ -1048,7 +1296,8 @@ public abstract class BaseTest {
 		outputFileST.add("parserName", parserName);
 		outputFileST.add("lexerName", lexerName);
 		outputFileST.add("parserStartRuleName", parserStartRuleName);
-		writeFile(tmpdir, "Test.java", outputFileST.render());
+		outputFileST.add("inMemory", memoryCompiler!=null);
+		writeTempFile("Test.java", outputFileST.render());
 	}
 
 	protected void writeLexerTestFile(String lexerName, boolean showDFA) {
@@ -1057,7 +1306,7 @@ public abstract class BaseTest {
 			"\n" +
 			"public class Test {\n" +
 			"    public static void main(String[] args) throws Exception {\n" +
-			"        CharStream input = new ANTLRFileStream(args[0]);\n" +
+			"        CharStream input = new <if(inMemory)>ANTLRInputStream<else>ANTLRFileStream<endif>(args[0]);\n" +
 			"        <lexerName> lex = new <lexerName>(input);\n" +
 			"        CommonTokenStream tokens = new CommonTokenStream(lex);\n" +
 			"        tokens.fill();\n" +
@@ -1068,7 +1317,8 @@ public abstract class BaseTest {
 			);
 
 		outputFileST.add("lexerName", lexerName);
-		writeFile(tmpdir, "Test.java", outputFileST.render());
+		outputFileST.add("inMemory", memoryCompiler!=null);
+		writeTempFile("Test.java", outputFileST.render());
 	}
 
 	public void writeRecognizerAndCompile(String parserName, String lexerName,
@@ -22,6 +22,7 @@ import org.junit.internal.runners.statements.InvokeMethod;
 import org.junit.internal.runners.statements.RunAfters;
 import org.junit.internal.runners.statements.RunBefores;
 import org.junit.rules.MethodRule;
+import org.junit.rules.TestTimings;
 import org.junit.runner.Description;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.model.FrameworkField;
@@ -107,13 +108,25 @@ public class BlockJUnit4ClassRunner extends ParentRunner<FrameworkMethod> {
 		return getTestClass().getAnnotatedMethods(Test.class);
 	}
 
+	/**
+	 * Validation only depends on the test class and the runner type, so the
+	 * result is computed once per pair and shared through
+	 * {@link TestClassMetadata}.
+	 */
 	@Override
 	protected void collectInitializationErrors(List<Throwable> errors) {
-		super.collectInitializationErrors(errors);
-
-		validateConstructor(errors);
-		validateInstanceMethods(errors);
-		validateFields(errors);
+		TestClassMetadata metadata= getMetadata();
+		List<Throwable> cached= metadata.getInitializationErrors(getClass());
+		if (cached == null) {
+			cached= new ArrayList<Throwable>();
+			super.collectInitializationErrors(cached);
+
+			validateConstructor(cached);
+			validateInstanceMethods(cached);
+			validateFields(cached);
+			metadata.putInitializationErrors(getClass(), cached);
+		}
+		errors.addAll(cached);
 	}
 	
 	/**
@@ -258,8 +271,13 @@ public class BlockJUnit4ClassRunner extends ParentRunner<FrameworkMethod> {
 		Statement statement= methodInvoker(method, test);
 		statement= possiblyExpectingExceptions(method, test, statement);
 		statement= withPotentialTimeout(method, test, statement);
+		Stopwatch body= null;
+		if (TestTimings.getDefault() != null)
+			statement= body= new Stopwatch(statement);
 		statement= withBefores(method, test, statement);
 		statement= withAfters(method, test, statement);
+		if (body != null)
+			statement= withTiming(method, body, statement);
 		statement= withRules(method, test, statement);
 		return statement;
 	}
@@ -337,6 +355,34 @@ public class BlockJUnit4ClassRunner extends ParentRunner<FrameworkMethod> {
 			new RunAfters(statement, afters, target);
 	}
 	
+	/**
+	 * Returns a {@link Statement}: run {@code statement} and record its time,
+	 * the part not spent in {@code body}, and its outcome in
+	 * {@link TestTimings#getDefault()}. A failed assumption records no
+	 * outcome, so it counts as neither a failure nor a flake.
+	 */
+	private Statement withTiming(final FrameworkMethod method,
+			final Stopwatch body, final Statement statement) {
+		return new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				Boolean passed= Boolean.FALSE;
+				long start= System.nanoTime();
+				try {
+					statement.evaluate();
+					passed= Boolean.TRUE;
+				} catch (AssumptionViolatedException e) {
+					passed= null;
+					throw e;
+				} finally {
+					long nanos= System.nanoTime() - start;
+					TestTimings.getDefault().recordTest(describeChild(method),
+							nanos, nanos - body.getNanos(), passed);
+				}
+			}
+		};
+	}
+
 	private Statement withRules(FrameworkMethod method, Object target,
 			Statement statement) {
 		Statement result= statement;
@@ -370,6 +416,10 @@ public class BlockJUnit4ClassRunner extends ParentRunner<FrameworkMethod> {
 		}
 	}
 
+	private TestClassMetadata getMetadata() {
+		return TestClassMetadata.forClass(getTestClass().getJavaClass());
+	}
+
 	private EachTestNotifier makeNotifier(FrameworkMethod method,
 			RunNotifier notifier) {
 		Description description= describeChild(method);
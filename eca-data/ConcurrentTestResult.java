@@ -0,0 +1,296 @@
+package junit.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A <code>TestResult</code> for tests that run on many threads at once.
+ * Nothing on the test path takes a lock: counts are atomic, failures and
+ * errors go to concurrent queues, and listeners are kept in a copy-on-write
+ * list that is iterated without copying.
+ * <p>
+ * With asynchronous dispatch, listener callbacks are queued and delivered in
+ * order on a single daemon thread, so a slow listener never blocks a test.
+ * Call {@link #flush()} before reading listener output and
+ * {@link #shutdown()} when the run is over.
+ *
+ * @see TestResult
+ */
+public class ConcurrentTestResult extends TestResult {
+	private final Queue<TestFailure> fConcurrentFailures= new ConcurrentLinkedQueue<TestFailure>();
+	private final Queue<TestFailure> fConcurrentErrors= new ConcurrentLinkedQueue<TestFailure>();
+	private final AtomicInteger fFailureCount= new AtomicInteger();
+	private final AtomicInteger fErrorCount= new AtomicInteger();
+	private final AtomicInteger fRunCount= new AtomicInteger();
+	private final List<TestListener> fConcurrentListeners= new CopyOnWriteArrayList<TestListener>();
+	private final ListenerDispatcher fDispatcher;
+	private volatile boolean fStopped;
+
+	public ConcurrentTestResult() {
+		this(false);
+	}
+
+	/**
+	 * @param asyncListeners deliver listener callbacks on a background
+	 * thread instead of the test thread
+	 */
+	public ConcurrentTestResult(boolean asyncListeners) {
+		fDispatcher= asyncListeners ? new ListenerDispatcher() : null;
+	}
+
+	@Override
+	public void addError(final Test test, final Throwable t) {
+		fConcurrentErrors.add(new TestFailure(test, t));
+		fErrorCount.incrementAndGet();
+		notifyListeners(new ListenerEvent(test) {
+			void fire(TestListener each) {
+				each.addError(test, t);
+			}
+		});
+	}
+
+	@Override
+	public void addFailure(final Test test, final AssertionFailedError t) {
+		fConcurrentFailures.add(new TestFailure(test, t));
+		fFailureCount.incrementAndGet();
+		notifyListeners(new ListenerEvent(test) {
+			void fire(TestListener each) {
+				each.addFailure(test, t);
+			}
+		});
+	}
+
+	@Override
+	public void addListener(TestListener listener) {
+		fConcurrentListeners.add(listener);
+	}
+
+	@Override
+	public void removeListener(TestListener listener) {
+		fConcurrentListeners.remove(listener);
+	}
+
+	@Override
+	public void startTest(final Test test) {
+		fRunCount.addAndGet(test.countTestCases());
+		notifyListeners(new ListenerEvent(test) {
+			void fire(TestListener each) {
+				each.startTest(test);
+			}
+		});
+	}
+
+	@Override
+	public void endTest(final Test test) {
+		notifyListeners(new ListenerEvent(test) {
+			void fire(TestListener each) {
+				each.endTest(test);
+			}
+		});
+	}
+
+	@Override
+	public int errorCount() {
+		return fErrorCount.get();
+	}
+
+	/**
+	 * Returns an Enumeration over a snapshot of the errors
+	 */
+	@Override
+	public Enumeration<TestFailure> errors() {
+		return Collections.enumeration(new ArrayList<TestFailure>(fConcurrentErrors));
+	}
+
+	@Override
+	public int failureCount() {
+		return fFailureCount.get();
+	}
+
+	/**
+	 * Returns an Enumeration over a snapshot of the failures
+	 */
+	@Override
+	public Enumeration<TestFailure> failures() {
+		return Collections.enumeration(new ArrayList<TestFailure>(fConcurrentFailures));
+	}
+
+	@Override
+	public int runCount() {
+		return fRunCount.get();
+	}
+
+	@Override
+	public boolean shouldStop() {
+		return fStopped;
+	}
+
+	@Override
+	public void stop() {
+		fStopped= true;
+	}
+
+	@Override
+	public boolean wasSuccessful() {
+		return failureCount() == 0 && errorCount() == 0;
+	}
+
+	/**
+	 * Waits until every listener callback queued so far has been delivered.
+	 * Returns immediately for synchronous dispatch.
+	 */
+	public void flush() throws InterruptedException {
+		if (fDispatcher != null)
+			fDispatcher.flush();
+	}
+
+	/**
+	 * Delivers the queued listener callbacks and stops the dispatch thread.
+	 * Later events are delivered on the calling thread.
+	 */
+	public void shutdown() throws InterruptedException {
+		if (fDispatcher != null)
+			fDispatcher.shutdown();
+	}
+
+	private void notifyListeners(final ListenerEvent event) {
+		if (fDispatcher != null && fDispatcher.dispatch(new Runnable() {
+			public void run() {
+				fireEventInBackground(event);
+			}
+		}))
+			return;
+		fireEvent(event);
+	}
+
+	/**
+	 * The test that caused the event has moved on, so a listener that
+	 * throws is recorded as an error of that test rather than propagated.
+	 * The error is not passed to the listeners again, so a listener that
+	 * always throws can't loop. This includes errors such as an
+	 * {@link AssertionFailedError} thrown by a listener.
+	 */
+	private void fireEventInBackground(ListenerEvent event) {
+		for (TestListener each : fConcurrentListeners) {
+			try {
+				event.fire(each);
+			} catch (Throwable e) {
+				fConcurrentErrors.add(new TestFailure(event.fTest, e));
+				fErrorCount.incrementAndGet();
+			}
+		}
+	}
+
+	private void fireEvent(ListenerEvent event) {
+		for (TestListener each : fConcurrentListeners)
+			event.fire(each);
+	}
+
+	private static abstract class ListenerEvent {
+		final Test fTest;
+
+		ListenerEvent(Test test) {
+			fTest= test;
+		}
+
+		abstract void fire(TestListener each);
+	}
+
+	/**
+	 * Delivers queued events in order on one daemon thread.
+	 */
+	private static class ListenerDispatcher implements Runnable {
+		private static final Runnable STOP= new Runnable() {
+			public void run() {
+			}
+		};
+
+		private final BlockingQueue<Runnable> fEvents= new LinkedBlockingQueue<Runnable>();
+		private final Thread fThread;
+		private volatile boolean fShutdown;
+
+		ListenerDispatcher() {
+			fThread= new Thread(this, "TestResult listener dispatcher");
+			fThread.setDaemon(true);
+			fThread.start();
+		}
+
+		/**
+		 * Returns false if the dispatcher has been shut down and the caller
+		 * should deliver the event itself.
+		 * <p>
+		 * The event is queued before <code>fShutdown</code> is checked again,
+		 * so an event that raced with {@link #shutdown()} is either taken by
+		 * the dispatcher or the final drain, or removed again here and handed
+		 * back to the caller; it is never left in the queue.
+		 */
+		boolean dispatch(Runnable event) {
+			if (fShutdown)
+				return false;
+			fEvents.add(event);
+			return !(fShutdown && fEvents.remove(event));
+		}
+
+		void flush() throws InterruptedException {
+			final CountDownLatch delivered= new CountDownLatch(1);
+			if (!dispatch(new Runnable() {
+				public void run() {
+					delivered.countDown();
+				}
+			}))
+				return;
+			delivered.await();
+		}
+
+		void shutdown() throws InterruptedException {
+			fShutdown= true;
+			fEvents.add(STOP);
+			fThread.join();
+			// anything that raced with STOP
+			drain();
+		}
+
+		/**
+		 * The thread only stops once <code>fShutdown</code> is set, so events
+		 * are never queued without a thread or a final drain to run them.
+		 */
+		public void run() {
+			try {
+				for (;;) {
+					Runnable event= fEvents.take();
+					if (event == STOP)
+						return;
+					runSafely(event);
+				}
+			} catch (InterruptedException e) {
+				fShutdown= true;
+				drain();
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void drain() {
+			for (Runnable event= fEvents.poll(); event != null; event= fEvents.poll())
+				if (event != STOP)
+					runSafely(event);
+		}
+
+		private static void runSafely(Runnable event) {
+			try {
+				event.run();
+			} catch (Throwable e) {
+				// listener errors are recorded by fireEventInBackground;
+				// anything else must not stop the events behind it
+			}
+		}
+	}
+}
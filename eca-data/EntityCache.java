@@ -0,0 +1,182 @@
+package ro.mpp2025.hibernaterepo;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * A bounded, time-limited read-through cache of entities by id, used by
+ * {@link GenericHibernateRepo#findOne} once caching is enabled for an entity type.
+ * Entries expire {@code ttlMillis} after they were loaded and, when there are more than
+ * {@code maxEntries}, one that has not been read recently is evicted.
+ * <p>
+ * Reads take no lock: entries live in a {@link ConcurrentHashMap} and a hit only sets the
+ * entry's reference bit. Eviction is a separate CLOCK (second-chance) policy over a queue
+ * of entries in insertion order, run by whichever thread inserts past the limit.
+ * <p>
+ * Every caller gets its own copy, made with the {@code copier} the cache was created with,
+ * so changing a returned entity never changes what other callers see. The instance that was
+ * loaded is returned to the caller that loaded it and a copy is cached.
+ */
+public class EntityCache<ID, T> {
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final UnaryOperator<T> copier;
+    private final ConcurrentHashMap<ID, Entry<ID, T>> entries = new ConcurrentHashMap<>();
+    /** Entries in CLOCK order; may also hold entries already removed from the map. */
+    private final Queue<Entry<ID, T>> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger clockSize = new AtomicInteger();
+    private final Object evictionLock = new Object();
+    /** Bumped by every invalidation, so a load that raced with one is not cached. */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param copier returns a copy of an entity that shares no mutable state with it, or the
+     *               entity itself if the type is immutable
+     */
+    public EntityCache(long ttlMillis, int maxEntries, UnaryOperator<T> copier) {
+        if(ttlMillis <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("ttlMillis and maxEntries must be positive");
+        }
+        if(copier == null) {
+            throw new IllegalArgumentException("copier must not be null");
+        }
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.maxEntries = maxEntries;
+        this.copier = copier;
+    }
+
+    /**
+     * Returns a copy of the cached entity, or loads it with {@code loader} and caches a copy
+     * if it exists. The loader runs without any lock held.
+     */
+    public T get(ID id, Function<ID, T> loader) {
+        Entry<ID, T> entry = entries.get(id);
+        if(entry != null) {
+            if(System.nanoTime() - entry.loadedAt < ttlNanos) {
+                entry.referenced = true;
+                hits.increment();
+                return copier.apply(entry.value);
+            }
+            entries.remove(id, entry);
+        }
+        long loadGeneration = generation.get();
+        misses.increment();
+        long start = System.nanoTime();
+        T value = loader.apply(id);
+        long loadedAt = System.nanoTime();
+        loadNanos.add(loadedAt - start);
+        if(value != null) {
+            Entry<ID, T> loaded = new Entry<>(id, copier.apply(value), loadedAt);
+            entries.put(id, loaded);
+            // an invalidation since the load started may have missed the put; undo it
+            if(generation.get() != loadGeneration) {
+                entries.remove(id, loaded);
+            } else {
+                clock.add(loaded);
+                clockSize.incrementAndGet();
+                evictIfNeeded();
+            }
+        }
+        return value;
+    }
+
+    public void invalidate(ID id) {
+        generation.incrementAndGet();
+        entries.remove(id);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Evicts until the cache is back under {@code maxEntries}. The queue is also swept when
+     * it holds many entries that were invalidated or expired, so it stays bounded.
+     */
+    private void evictIfNeeded() {
+        if(entries.size() <= maxEntries && clockSize.get() <= 2 * maxEntries) {
+            return;
+        }
+        synchronized(evictionLock) {
+            while(entries.size() > maxEntries || clockSize.get() > 2 * maxEntries) {
+                Entry<ID, T> candidate = clock.poll();
+                if(candidate == null) {
+                    return;
+                }
+                clockSize.decrementAndGet();
+                if(entries.get(candidate.id) != candidate) {
+                    continue;
+                }
+                if(candidate.referenced) {
+                    candidate.referenced = false;
+                    clock.add(candidate);
+                    clockSize.incrementAndGet();
+                } else if(entries.remove(candidate.id, candidate)) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Total time spent in the loader, i.e. in database lookups for misses.
+     */
+    public long getTotalLoadNanos() {
+        return loadNanos.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "EntityCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + ", loadNanos=" + getTotalLoadNanos() + "}";
+    }
+
+    private static final class Entry<ID, T> {
+        final ID id;
+        final T value;
+        final long loadedAt;
+        /** Set by reads, cleared when the CLOCK hand passes; gives the entry a second chance. */
+        volatile boolean referenced;
+
+        Entry(ID id, T value, long loadedAt) {
+            this.id = id;
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * [The "BSD license"]
+ *  Copyright (c) 2012 Terence Parr
+ *  Copyright (c) 2012 Sam Harwell
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.v4.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** A content-addressed, on-disk store of generated and compiled grammar
+ *  output, shared by every test and every forked VM pointed at the same
+ *  directory.
+ *
+ *  <p>Each entry is a directory named by a SHA-256 {@link #key} over the
+ *  grammar text, tool options and a {@link #fingerprint} of the tool's own
+ *  classes and templates, so a rebuilt SNAPSHOT never reuses output from
+ *  the previous build. Entries are written to a
+ *  private temp directory and then renamed into place, so a reader in any
+ *  fork sees either a complete entry or none. When two forks race to store
+ *  the same key, the first rename wins and the other copy is thrown away.
+ *  Where a directory can't be renamed, the entry is copied into place while
+ *  holding a <code>key.lock</code> file, and readers treat an entry with a
+ *  lock file as missing.</p>
+ *
+ *  <p>The cache is best-effort: any I/O problem is logged and treated as a
+ *  miss, never as a test failure.</p>
+ */
+public class GeneratedGrammarCache {
+	private static final Logger LOGGER = Logger.getLogger(GeneratedGrammarCache.class.getName());
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Name of the entry holding the tool messages reported when the
+	 *  grammar was generated; never written to the test's output directory.
+	 */
+	public static final String TOOL_MESSAGES = ".antlr-tool-messages";
+
+	protected final File root;
+
+	public GeneratedGrammarCache(File root) {
+		this.root = root;
+	}
+
+	public File getRoot() {
+		return root;
+	}
+
+	/** Hash the parts, in order, into a hex cache key */
+	public static String key(String... parts) {
+		MessageDigest digest = newDigest();
+		for (String part : parts) {
+			if ( part!=null ) {
+				digest.update(part.getBytes(UTF8));
+			}
+			// separator so ("ab","c") and ("a","bc") differ
+			digest.update((byte)0);
+		}
+		return toHex(digest.digest());
+	}
+
+	/** Hash the jar or class directory c was loaded from, templates and all.
+	 *  Falls back to a random value, which disables reuse across VMs, if the
+	 *  code can't be read.
+	 */
+	public static String fingerprint(Class<?> c) {
+		try {
+			CodeSource source = c.getProtectionDomain().getCodeSource();
+			if ( source!=null && source.getLocation()!=null ) {
+				File location = new File(source.getLocation().toURI());
+				Map<String, byte[]> files = new TreeMap<String, byte[]>();
+				if ( location.isDirectory() ) {
+					readFiles(location, "", files);
+				}
+				else {
+					files.put(location.getName(), readBytes(location));
+				}
+
+				MessageDigest digest = newDigest();
+				for (Map.Entry<String, byte[]> file : files.entrySet()) {
+					digest.update(file.getKey().getBytes(UTF8));
+					digest.update((byte)0);
+					digest.update(file.getValue());
+				}
+				return toHex(digest.digest());
+			}
+		}
+		catch (IOException ioe) {
+			LOGGER.log(Level.WARNING, "can't fingerprint "+c.getName(), ioe);
+		}
+		catch (URISyntaxException use) {
+			LOGGER.log(Level.WARNING, "can't fingerprint "+c.getName(), use);
+		}
+		catch (SecurityException se) {
+			LOGGER.log(Level.WARNING, "can't fingerprint "+c.getName(), se);
+		}
+		return "unknown-"+System.nanoTime()+"-"+Math.random();
+	}
+
+	protected static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException nsae) {
+			throw new IllegalStateException("SHA-256 not available", nsae);
+		}
+	}
+
+	protected static String toHex(byte[] bytes) {
+		StringBuilder buf = new StringBuilder();
+		for (byte b : bytes) {
+			buf.append(String.format("%02x", b & 0xFF));
+		}
+		return buf.toString();
+	}
+
+	/** Return file contents by relative path ('/' separated) or null if
+	 *  key is not cached.
+	 */
+	public Map<String, byte[]> load(String key) {
+		File entry = new File(root, key);
+		// the lock is taken before the entry is created, so no lock means it's complete
+		if ( !entry.isDirectory() || lockFile(key).exists() ) {
+			return null;
+		}
+
+		Map<String, byte[]> files = new TreeMap<String, byte[]>();
+		try {
+			readFiles(entry, "", files);
+		}
+		catch (IOException ioe) {
+			LOGGER.log(Level.WARNING, "can't read grammar cache entry "+entry, ioe);
+			return null;
+		}
+		return files;
+	}
+
+	/** Publish files under key unless another test or fork already did */
+	public void store(String key, Map<String, byte[]> files) {
+		File target = new File(root, key);
+		if ( target.isDirectory() ) {
+			return;
+		}
+
+		File staging = null;
+		try {
+			root.mkdirs();
+			staging = File.createTempFile(key+"-", ".tmp", root);
+			if ( !staging.delete() || !staging.mkdir() ) {
+				throw new IOException("can't create "+staging);
+			}
+			writeFiles(staging, files);
+
+			if ( staging.renameTo(target) ) {
+				staging = null;
+			}
+			else if ( !target.isDirectory() ) {
+				storeLocked(key, target, files);
+			}
+			// else lost the race to another fork; its copy is identical
+		}
+		catch (IOException ioe) {
+			LOGGER.log(Level.WARNING, "can't store grammar cache entry "+target, ioe);
+		}
+		finally {
+			if ( staging!=null ) {
+				delete(staging);
+			}
+		}
+	}
+
+	/** Copy files into target under the key's lock file, for platforms where
+	 *  the staging directory can't be renamed into place. Does nothing if
+	 *  another fork holds the lock.
+	 */
+	protected void storeLocked(String key, File target, Map<String, byte[]> files) throws IOException {
+		File lock = lockFile(key);
+		if ( !lock.createNewFile() ) {
+			return;
+		}
+		if ( target.exists() ) {
+			lock.delete();
+			return;
+		}
+		writeFiles(target, files);
+		// a failed copy keeps its lock, so readers never see the partial entry
+		lock.delete();
+	}
+
+	protected File lockFile(String key) {
+		return new File(root, key+".lock");
+	}
+
+	protected static void writeFiles(File dir, Map<String, byte[]> files) throws IOException {
+		for (Map.Entry<String, byte[]> file : files.entrySet()) {
+			File f = new File(dir, file.getKey());
+			f.getParentFile().mkdirs();
+			writeBytes(f, file.getValue());
+		}
+	}
+
+	protected static void readFiles(File dir, String prefix, Map<String, byte[]> files) throws IOException {
+		File[] children = dir.listFiles();
+		if ( children==null ) {
+			throw new IOException("can't list "+dir);
+		}
+		for (File child : children) {
+			String name = prefix+child.getName();
+			if ( child.isDirectory() ) {
+				readFiles(child, name+"/", files);
+			}
+			else {
+				files.put(name, readBytes(child));
+			}
+		}
+	}
+
+	public static byte[] readBytes(File f) throws IOException {
+		InputStream in = new FileInputStream(f);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int)f.length());
+			byte[] buf = new byte[8192];
+			for (int n = in.read(buf); n!=-1; n = in.read(buf)) {
+				out.write(buf, 0, n);
+			}
+			return out.toByteArray();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	public static void writeBytes(File f, byte[] bytes) throws IOException {
+		OutputStream out = new FileOutputStream(f);
+		try {
+			out.write(bytes);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	protected static void delete(File f) {
+		File[] children = f.listFiles();
+		if ( children!=null ) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		f.delete();
+	}
+}
@@ -1,18 +1,34 @@
 package ro.mpp2025.hibernaterepo;
 
 import org.hibernate.Session;
+import org.hibernate.StaleStateException;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.query.Query;
 import ro.mpp2025.Entity;
 import ro.mpp2025.interfaces.IRepository;
 
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 public class GenericHibernateRepo <ID, T extends Entity<ID>> implements IRepository<ID, T> {
 
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    private static final Map<Class<?>, EntityCache<?, ?>> caches = new ConcurrentHashMap<>();
+
     protected final Class<T> entityType;
 
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
     @SuppressWarnings("unchecked")
     public GenericHibernateRepo() {
         this.entityType = (Class<T>) ((ParameterizedType) getClass().getGenericSuperclass())
@@ -23,13 +39,93 @@ public class GenericHibernateRepo <ID, T extends Entity<ID>> implements IReposit
         this.entityType = entityType;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets how many statements {@link #saveAll} and {@link #updateAll} send per JDBC batch,
+     * which is also how often they flush and clear the session.
+     */
+    public void setBatchSize(int batchSize) {
+        if(batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be >= 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Turns on the {@link #findOne} cache for an entity type, shared by all repositories of
+     * that type. Entities are kept for at most {@code ttlMillis} and at most {@code maxEntries}
+     * of them are kept. Meant for reference data that rarely changes: writes made through
+     * these repositories invalidate their entries, writes made elsewhere are only seen
+     * once the entry expires.
+     * <p>
+     * Every {@link #findOne} gets its own copy made by {@code copier}, so callers can't change
+     * each other's entities or the cached ones.
+     */
+    public static <E> void enableCache(Class<E> entityType, long ttlMillis, int maxEntries,
+                                       UnaryOperator<E> copier) {
+        caches.put(entityType, new EntityCache<Object, E>(ttlMillis, maxEntries, copier));
+    }
+
+    /**
+     * Like {@link #enableCache(Class, long, int, UnaryOperator)} for read-only entity types,
+     * which are shared between callers without copying.
+     *
+     * @throws IllegalArgumentException if the type is not annotated {@link Immutable}
+     */
+    public static void enableCache(Class<?> entityType, long ttlMillis, int maxEntries) {
+        if(!entityType.isAnnotationPresent(Immutable.class)) {
+            throw new IllegalArgumentException(entityType.getName()
+                    + " is mutable; enable its cache with a copier");
+        }
+        caches.put(entityType, new EntityCache<>(ttlMillis, maxEntries, UnaryOperator.identity()));
+    }
+
+    public static void disableCache(Class<?> entityType) {
+        caches.remove(entityType);
+    }
+
+    /**
+     * Returns the cache of this repository's entity type, with its hit, miss and load time
+     * counters, or null if caching is not enabled for it.
+     */
+    @SuppressWarnings("unchecked")
+    public EntityCache<ID, T> getCache() {
+        return (EntityCache<ID, T>) caches.get(entityType);
+    }
+
     @Override
     public T findOne(ID id) {
+        EntityCache<ID, T> cache = getCache();
+        return cache != null ? cache.get(id, this::load) : load(id);
+    }
+
+    private T load(ID id) {
         try(Session session = HibernateUtils.getSessionFactory().openSession()) {
             return session.get(entityType, id);
         }
     }
 
+    private void invalidate(ID id) {
+        EntityCache<ID, T> cache = getCache();
+        if(cache != null && id != null) {
+            cache.invalidate(id);
+        }
+    }
+
+    private void invalidateAll(Iterable<T> entities) {
+        EntityCache<ID, T> cache = getCache();
+        if(cache != null) {
+            for(T entity : entities) {
+                if(entity != null && entity.getId() != null) {
+                    cache.invalidate(entity.getId());
+                }
+            }
+        }
+    }
+
     @Override
     public Iterable<T> findAll() {
         try(Session session = HibernateUtils.getSessionFactory().openSession()) {
@@ -39,40 +135,181 @@ public class GenericHibernateRepo <ID, T extends Entity<ID>> implements IReposit
         }
     }
 
+    /**
+     * Streams every entity without loading the whole table. Rows are read {@code fetchSize}
+     * at a time through a stateless session, so nothing accumulates in a persistence context.
+     * The stream holds the session open and must be closed, e.g. with try-with-resources.
+     */
+    public Stream<T> findAll(int fetchSize) {
+        StatelessSession session = HibernateUtils.getSessionFactory().openStatelessSession();
+        try {
+            String hql = "FROM "+entityType.getSimpleName();
+            return session.createQuery(hql, entityType)
+                    .setFetchSize(fetchSize)
+                    .getResultStream()
+                    .onClose(session::close);
+        } catch (RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns up to {@code pageSize} entities ordered by id, starting after {@code lastId}
+     * ({@code null} for the first page). Unlike an offset, the id is looked up in the index,
+     * so late pages cost as much as early ones.
+     */
+    public List<T> findPageAfter(ID lastId, int pageSize) {
+        try(Session session = HibernateUtils.getSessionFactory().openSession()) {
+            String hql = "FROM "+entityType.getSimpleName()+" e"
+                    + (lastId != null ? " WHERE e.id > :lastId" : "")
+                    + " ORDER BY e.id";
+            Query<T> query = session.createQuery(hql, entityType).setMaxResults(pageSize);
+            if(lastId != null) {
+                query.setParameter("lastId", lastId);
+            }
+            return query.getResultList();
+        }
+    }
+
     @Override
     public T save(T entity) {
 
         HibernateUtils.getSessionFactory().inTransaction(session -> {
             session.persist(entity);
         });
+        invalidate(entity.getId());
         return entity;
     }
 
+    /**
+     * Persists all entities in one transaction, sending the inserts in JDBC batches.
+     * Entities with an IDENTITY generated id are still inserted one at a time.
+     */
+    public Iterable<T> saveAll(Iterable<T> entities) {
+        List<T> saved = new ArrayList<>();
+        HibernateUtils.getSessionFactory().inTransaction(session -> {
+            session.setJdbcBatchSize(batchSize);
+            int count = 0;
+            for(T entity : entities) {
+                session.persist(entity);
+                saved.add(entity);
+                if(++count % batchSize == 0) {
+                    session.flush();
+                    session.clear();
+                }
+            }
+        });
+        // entities may only be iterable once
+        invalidateAll(saved);
+        return saved;
+    }
+
     @Override
     public T delete(ID id) {
-        T entity = findOne(id);
-        if(entity != null) {
-            HibernateUtils.getSessionFactory().inTransaction(session -> {
-               T managedEntity = session.get(entityType, id);
-               if(managedEntity != null) {
-                   session.remove(managedEntity);
-                   session.flush();
-               }
-            });
-        }
-        return entity;
+        T deleted = HibernateUtils.getSessionFactory().fromTransaction(session -> {
+            T entity = session.get(entityType, id);
+            if(entity != null) {
+                session.remove(entity);
+            }
+            return entity;
+        });
+        invalidate(id);
+        return deleted;
+    }
+
+    /**
+     * Deletes the entity with a single DELETE statement, without loading it first.
+     * Cascades and entity callbacks are not applied.
+     *
+     * @return whether a row was deleted
+     */
+    public boolean deleteById(ID id) {
+        String hql = "DELETE FROM "+entityType.getSimpleName()+" e WHERE e.id = :id";
+        boolean deleted = HibernateUtils.getSessionFactory().fromTransaction(session ->
+                session.createMutationQuery(hql).setParameter("id", id).executeUpdate() > 0);
+        invalidate(id);
+        return deleted;
     }
 
     @Override
     public T update(T entity) {
-        if(entity != null || entity.getId() != null) {
+        if(entity != null && entity.getId() != null) {
             HibernateUtils.getSessionFactory().inTransaction(session -> {
                if(!Objects.isNull(session.find(entityType, entity.getId()))) {
                    session.merge(entity);
                    session.flush();
                }
             });
+            invalidate(entity.getId());
         }
         return entity;
     }
+
+    /**
+     * Updates all entities that exist in one transaction. Existing rows are looked up with
+     * one query per batch and the updates are sent in JDBC batches; entities whose id is not
+     * found are skipped, as in {@link #update}.
+     */
+    public Iterable<T> updateAll(Iterable<T> entities) {
+        List<T> updated = new ArrayList<>();
+        HibernateUtils.getSessionFactory().inTransaction(session -> {
+            session.setJdbcBatchSize(batchSize);
+            Map<ID, T> batch = new HashMap<>();
+            for(T entity : entities) {
+                updated.add(entity);
+                if(entity != null && entity.getId() != null) {
+                    batch.put(entity.getId(), entity);
+                    if(batch.size() == batchSize) {
+                        mergeExisting(session, batch);
+                    }
+                }
+            }
+            mergeExisting(session, batch);
+        });
+        // entities may only be iterable once
+        invalidateAll(updated);
+        return updated;
+    }
+
+    private void mergeExisting(Session session, Map<ID, T> batch) {
+        if(batch.isEmpty()) {
+            return;
+        }
+        List<T> existing = session.byMultipleIds(entityType).multiLoad(new ArrayList<>(batch.keySet()));
+        for(T managed : existing) {
+            if(managed != null) {
+                session.merge(batch.get(managed.getId()));
+            }
+        }
+        session.flush();
+        session.clear();
+        batch.clear();
+    }
+
+    /**
+     * Updates the entity with a single UPDATE statement, without loading it first.
+     *
+     * @return whether a row with the entity's id existed
+     */
+    public boolean updateById(T entity) {
+        if(entity == null || entity.getId() == null) {
+            return false;
+        }
+        try(StatelessSession session = HibernateUtils.getSessionFactory().openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                session.update(entity);
+                transaction.commit();
+                invalidate(entity.getId());
+                return true;
+            } catch (StaleStateException e) {
+                transaction.rollback();
+                return false;
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            }
+        }
+    }
 }
@@ -0,0 +1,249 @@
+/*
+ * [The "BSD license"]
+ *  Copyright (c) 2012 Terence Parr
+ *  Copyright (c) 2012 Sam Harwell
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.v4.test;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Compiles generated recognizers straight to byte arrays and loads them
+ *  through a private class loader, so a test never writes a .java or
+ *  .class file. One {@link JavaCompiler} and its standard file manager are
+ *  shared by every instance; javac startup and classpath indexing are paid
+ *  once per VM instead of once per {@link BaseTest#compile}.
+ */
+public class InMemoryJavaCompiler {
+	private static final JavaCompiler COMPILER = ToolProvider.getSystemJavaCompiler();
+
+	/** Not thread safe; every compile locks it. */
+	private static final StandardJavaFileManager STANDARD_FILE_MANAGER =
+		COMPILER.getStandardFileManager(null, null, null);
+
+	/** Source text by file name, e.g. "TParser.java" */
+	protected final Map<String, String> sources = new ConcurrentHashMap<String, String>();
+
+	/** Class file bytes by binary name, e.g. "TParser$AContext" */
+	protected final Map<String, byte[]> classes = new ConcurrentHashMap<String, byte[]>();
+
+	public void addSource(String fileName, String text) {
+		sources.put(fileName, text);
+	}
+
+	public String getSource(String fileName) {
+		return sources.get(fileName);
+	}
+
+	public Map<String, String> getSources() {
+		return Collections.unmodifiableMap(sources);
+	}
+
+	public void addClass(String binaryName, byte[] bytes) {
+		classes.put(binaryName, bytes);
+	}
+
+	public Map<String, byte[]> getClasses() {
+		return Collections.unmodifiableMap(classes);
+	}
+
+	/** Compile the named sources previously handed to {@link #addSource}.
+	 *  Classes from earlier calls are visible on the classpath, so Test.java
+	 *  can be compiled against a lexer and parser built in a prior call.
+	 *  Return true if all is ok, no errors.
+	 */
+	public boolean compile(Iterable<String> options, String... fileNames) {
+		List<JavaFileObject> compilationUnits = new ArrayList<JavaFileObject>();
+		for (String fileName : fileNames) {
+			String text = sources.get(fileName);
+			if ( text==null ) {
+				System.err.println("no in-memory source for "+fileName);
+				return false;
+			}
+			compilationUnits.add(new MemorySourceFile(fileName, text));
+		}
+
+		synchronized (STANDARD_FILE_MANAGER) {
+			MemoryFileManager fileManager = new MemoryFileManager(STANDARD_FILE_MANAGER);
+			JavaCompiler.CompilationTask task =
+				COMPILER.getTask(null, fileManager, null, options, null,
+								 compilationUnits);
+			return task.call();
+		}
+	}
+
+	public ClassLoader createClassLoader(ClassLoader parent) {
+		return new MemoryClassLoader(parent);
+	}
+
+	protected class MemoryClassLoader extends ClassLoader {
+		public MemoryClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] bytes = classes.get(name);
+			if ( bytes==null ) {
+				throw new ClassNotFoundException(name);
+			}
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	protected static class MemorySourceFile extends SimpleJavaFileObject {
+		protected final String text;
+
+		public MemorySourceFile(String fileName, String text) {
+			super(URI.create("mem:///"+fileName), Kind.SOURCE);
+			this.text = text;
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return text;
+		}
+	}
+
+	protected class MemoryClassFile extends SimpleJavaFileObject {
+		protected final String binaryName;
+
+		public MemoryClassFile(String binaryName) {
+			super(URI.create("mem:///"+binaryName.replace('.', '/')+Kind.CLASS.extension), Kind.CLASS);
+			this.binaryName = binaryName;
+		}
+
+		@Override
+		public InputStream openInputStream() throws IOException {
+			byte[] bytes = classes.get(binaryName);
+			if ( bytes==null ) {
+				throw new IOException("no in-memory class "+binaryName);
+			}
+			return new ByteArrayInputStream(bytes);
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+			return new ByteArrayOutputStream() {
+				@Override
+				public void close() throws IOException {
+					super.close();
+					classes.put(binaryName, toByteArray());
+				}
+			};
+		}
+	}
+
+	/** Routes javac's class output into {@link #classes} and lists those
+	 *  classes alongside the real classpath so later compiles resolve them.
+	 */
+	protected class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+		public MemoryFileManager(StandardJavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location,
+												   String className,
+												   JavaFileObject.Kind kind,
+												   FileObject sibling)
+			throws IOException
+		{
+			if ( kind==JavaFileObject.Kind.CLASS ) {
+				return new MemoryClassFile(className);
+			}
+			return super.getJavaFileForOutput(location, className, kind, sibling);
+		}
+
+		@Override
+		public Iterable<JavaFileObject> list(Location location,
+											 String packageName,
+											 Set<JavaFileObject.Kind> kinds,
+											 boolean recurse)
+			throws IOException
+		{
+			Iterable<JavaFileObject> fromParent = super.list(location, packageName, kinds, recurse);
+			if ( location!=StandardLocation.CLASS_PATH || !kinds.contains(JavaFileObject.Kind.CLASS) ) {
+				return fromParent;
+			}
+
+			List<JavaFileObject> result = new ArrayList<JavaFileObject>();
+			for (JavaFileObject f : fromParent) {
+				result.add(f);
+			}
+			for (String binaryName : classes.keySet()) {
+				int lastDot = binaryName.lastIndexOf('.');
+				String classPackage = lastDot>=0 ? binaryName.substring(0, lastDot) : "";
+				if ( classPackage.equals(packageName) ||
+					 (recurse && classPackage.startsWith(packageName+".")) )
+				{
+					result.add(new MemoryClassFile(binaryName));
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public String inferBinaryName(Location location, JavaFileObject file) {
+			if ( file instanceof MemoryClassFile ) {
+				return ((MemoryClassFile)file).binaryName;
+			}
+			return super.inferBinaryName(location, file);
+		}
+
+		@Override
+		public boolean isSameFile(FileObject a, FileObject b) {
+			if ( a instanceof MemoryClassFile || b instanceof MemoryClassFile ) {
+				return a.toUri().equals(b.toUri());
+			}
+			return super.isSameFile(a, b);
+		}
+
+		@Override
+		public void close() {
+			// the standard file manager is shared; keep it open
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package junit.samples.money;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A mutable sum of amounts in several currencies, for adding up many
+ * amounts without creating a Money or MoneyBag per step.
+ * <p>
+ * Currencies are interned to small ids with {@link #currencyId(String)}
+ * and amounts are kept as <code>long</code> minor units in an array
+ * indexed by currency id. Every operation throws an
+ * <code>ArithmeticException</code> instead of overflowing, and then
+ * leaves the amounts as they were.
+ * An accumulator is not thread safe; give each thread its own and
+ * {@link #add(MoneyAccumulator) add} them up at the end.
+ */
+public class MoneyAccumulator {
+
+	// read without locking; ids are only assigned while holding fgIds
+	private static final Map<String, Integer> fgIds= new ConcurrentHashMap<String, Integer>();
+	private static volatile String[] fgCurrencies= new String[0];
+
+	private long[] fAmounts= new long[fgCurrencies.length];
+
+	/**
+	 * Returns the id of the given currency, assigning the next free id
+	 * the first time a currency is seen.
+	 */
+	public static int currencyId(String currency) {
+		Integer id= fgIds.get(currency);
+		if (id != null)
+			return id.intValue();
+		synchronized (fgIds) {
+			id= fgIds.get(currency);
+			if (id != null)
+				return id.intValue();
+			int next= fgCurrencies.length;
+			String[] currencies= new String[next + 1];
+			System.arraycopy(fgCurrencies, 0, currencies, 0, next);
+			currencies[next]= currency;
+			// publish the name before the id, so currency(id) works for any id handed out
+			fgCurrencies= currencies;
+			fgIds.put(currency, next);
+			return next;
+		}
+	}
+	/**
+	 * Returns the currency with the given id.
+	 */
+	public static String currency(int currencyId) {
+		return fgCurrencies[currencyId];
+	}
+	/**
+	 * Adds an amount in minor units.
+	 */
+	public void add(int currencyId, long amount) {
+		ensureCapacity(currencyId);
+		fAmounts[currencyId]= addExact(fAmounts[currencyId], amount);
+	}
+	public void add(Money m) {
+		add(currencyId(m.currency()), m.amount());
+	}
+	/**
+	 * Adds all amounts of another accumulator.
+	 */
+	public void add(MoneyAccumulator other) {
+		long[] sums= new long[other.fAmounts.length];
+		for (int i= 0; i < sums.length; i++)
+			sums[i]= addExact(amount(i), other.fAmounts[i]);
+		ensureCapacity(sums.length - 1);
+		System.arraycopy(sums, 0, fAmounts, 0, sums.length);
+	}
+	/**
+	 * Adds <code>length</code> amounts starting at <code>offset</code>,
+	 * all in the same currency.
+	 */
+	public void sum(int currencyId, long[] amounts, int offset, int length) {
+		add(currencyId, sum(amounts, offset, length));
+	}
+	/**
+	 * Adds <code>length</code> amounts starting at <code>offset</code>,
+	 * each in the currency at the same index of <code>currencyIds</code>.
+	 */
+	public void sum(int[] currencyIds, long[] amounts, int offset, int length) {
+		int size= fAmounts.length;
+		for (int i= offset; i < offset + length; i++) {
+			if (currencyIds[i] < 0)
+				throw new IllegalArgumentException("Unknown currency id "+currencyIds[i]);
+			size= Math.max(size, currencyIds[i] + 1);
+		}
+		long[] sums= new long[size];
+		System.arraycopy(fAmounts, 0, sums, 0, fAmounts.length);
+		for (int i= offset; i < offset + length; i++)
+			sums[currencyIds[i]]= addExact(sums[currencyIds[i]], amounts[i]);
+		fAmounts= sums;
+	}
+	/**
+	 * Returns the sum of <code>length</code> amounts starting at
+	 * <code>offset</code>.
+	 */
+	public static long sum(long[] amounts, int offset, int length) {
+		long total= 0;
+		for (int i= offset; i < offset + length; i++)
+			total= addExact(total, amounts[i]);
+		return total;
+	}
+	/**
+	 * Multiplies <code>length</code> amounts starting at <code>offset</code>
+	 * by <code>factor</code>, in place. All products are checked before
+	 * any amount is changed.
+	 */
+	public static void multiply(long[] amounts, int offset, int length, long factor) {
+		for (int i= offset; i < offset + length; i++)
+			multiplyExact(amounts[i], factor);
+		for (int i= offset; i < offset + length; i++)
+			amounts[i]*= factor;
+	}
+	/**
+	 * Multiplies the amount in every currency by <code>factor</code>.
+	 */
+	public void multiply(long factor) {
+		multiply(fAmounts, 0, fAmounts.length, factor);
+	}
+	public void negate() {
+		multiply(-1);
+	}
+	/**
+	 * Returns the amount in minor units of the given currency.
+	 */
+	public long amount(int currencyId) {
+		return currencyId < fAmounts.length ? fAmounts[currencyId] : 0;
+	}
+	public long amount(String currency) {
+		return amount(currencyId(currency));
+	}
+	public boolean isZero() {
+		for (long each : fAmounts)
+			if (each != 0)
+				return false;
+		return true;
+	}
+	public void clear() {
+		for (int i= 0; i < fAmounts.length; i++)
+			fAmounts[i]= 0;
+	}
+	/**
+	 * Converts the sum into a Money or MoneyBag. Throws an
+	 * <code>ArithmeticException</code> if an amount does not fit an int.
+	 */
+	public IMoney toMoney() {
+		IMoney result= null;
+		for (int i= 0; i < fAmounts.length; i++) {
+			if (fAmounts[i] == 0)
+				continue;
+			if (fAmounts[i] != (int) fAmounts[i])
+				throw new ArithmeticException(fAmounts[i] + " " + currency(i) + " does not fit a Money");
+			Money m= new Money((int) fAmounts[i], currency(i));
+			result= result == null ? m : result.add(m);
+		}
+		return result == null ? new Money(0, "") : result;
+	}
+	@Override
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("{");
+		for (int i= 0; i < fAmounts.length; i++)
+			if (fAmounts[i] != 0)
+				buffer.append("["+fAmounts[i]+" "+currency(i)+"]");
+		buffer.append("}");
+		return buffer.toString();
+	}
+	private void ensureCapacity(int currencyId) {
+		if (currencyId < fAmounts.length)
+			return;
+		if (currencyId < 0)
+			throw new IllegalArgumentException("Unknown currency id "+currencyId);
+		long[] amounts= new long[Math.max(currencyId + 1, fAmounts.length * 2)];
+		System.arraycopy(fAmounts, 0, amounts, 0, fAmounts.length);
+		fAmounts= amounts;
+	}
+	private static long addExact(long a, long b) {
+		long r= a + b;
+		// overflow iff both operands have the sign opposite to the result
+		if (((a ^ r) & (b ^ r)) < 0)
+			throw new ArithmeticException("Money amount overflow");
+		return r;
+	}
+	private static long multiplyExact(long a, long b) {
+		long r= a * b;
+		if (a != 0 && (r / a != b || (a == -1 && b == Long.MIN_VALUE)))
+			throw new ArithmeticException("Money amount overflow");
+		return r;
+	}
+}
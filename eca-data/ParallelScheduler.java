@@ -0,0 +1,231 @@
+package org.junit.runners;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runner.notification.StoppedByUserException;
+import org.junit.runners.model.RunnerScheduler;
+
+/**
+ * A {@link RunnerScheduler} that runs children on a bounded pool of worker
+ * threads. {@link #finished()} blocks until every scheduled child has
+ * completed. The pool is created on the first {@link #schedule(Runnable)}
+ * and shut down by {@link #finished()}, so one instance may be reused for
+ * several runs.
+ *
+ * Annotate a test class or a suite with {@link Concurrent} to have
+ * {@link ParentRunner} use this scheduler for its children:
+ *
+ * <pre>
+ * &#064;Concurrent(threads= 8)
+ * &#064;RunWith(Suite.class)
+ * &#064;SuiteClasses({ DatabaseIT.class, HttpIT.class })
+ * public class AllIntegrationTests {
+ * }
+ * </pre>
+ *
+ * Children share the class instance state of the test, so only enable it for
+ * tests that are safe to run concurrently.
+ */
+public class ParallelScheduler implements RunnerScheduler {
+	/**
+	 * Runs the children of the annotated class or suite concurrently on at
+	 * most {@link #threads()} threads. The default, {@code 0}, uses one
+	 * thread per available processor.
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE)
+	@Inherited
+	public @interface Concurrent {
+		int threads() default 0;
+	}
+
+	private static final AtomicInteger fPoolNumber= new AtomicInteger();
+
+	private final int fThreads;
+
+	private ExecutorService fExecutor= null;
+
+	private final List<Future<?>> fScheduled= new ArrayList<Future<?>>();
+
+	/**
+	 * Constructs a scheduler that runs at most {@code threads} children at
+	 * once; {@code threads <= 0} means one per available processor.
+	 */
+	public ParallelScheduler(int threads) {
+		fThreads= threads > 0 ? threads : Runtime.getRuntime()
+				.availableProcessors();
+	}
+
+	public int getThreads() {
+		return fThreads;
+	}
+
+	public synchronized void schedule(Runnable childStatement) {
+		if (fExecutor == null)
+			fExecutor= Executors.newFixedThreadPool(fThreads,
+					new WorkerThreadFactory());
+		fScheduled.add(fExecutor.submit(childStatement));
+	}
+
+	/**
+	 * Waits for all scheduled children. If the waiting thread is interrupted,
+	 * children that have not started yet are cancelled, running children are
+	 * interrupted, and the interrupt status is restored.
+	 */
+	public void finished() {
+		List<Future<?>> scheduled;
+		ExecutorService executor;
+		synchronized (this) {
+			scheduled= new ArrayList<Future<?>>(fScheduled);
+			fScheduled.clear();
+			executor= fExecutor;
+			fExecutor= null;
+		}
+		if (executor == null)
+			return;
+
+		try {
+			for (Future<?> each : scheduled)
+				each.get();
+		} catch (InterruptedException e) {
+			for (Future<?> each : scheduled)
+				each.cancel(true);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// children report their own failures through the notifier;
+			// anything else escaping is an error in the runner itself
+			Throwable cause= e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final int fPool= fPoolNumber.incrementAndGet();
+
+		private final AtomicInteger fThreadNumber= new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread= new Thread(r, "junit-parallel-" + fPool + "-"
+					+ fThreadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * A {@link RunNotifier} that serializes all events on the notifier it
+	 * wraps, so listeners written for a single test thread can be used with
+	 * concurrent children. Wrapping a wrapper locks the same notifier, so
+	 * nested concurrent runners stay mutually exclusive.
+	 */
+	static class SynchronizedRunNotifier extends RunNotifier {
+		private final RunNotifier fDelegate;
+
+		SynchronizedRunNotifier(RunNotifier delegate) {
+			fDelegate= delegate instanceof SynchronizedRunNotifier
+					? ((SynchronizedRunNotifier) delegate).fDelegate
+					: delegate;
+		}
+
+		@Override
+		public void addListener(RunListener listener) {
+			synchronized (fDelegate) {
+				fDelegate.addListener(listener);
+			}
+		}
+
+		@Override
+		public void addFirstListener(RunListener listener) {
+			synchronized (fDelegate) {
+				fDelegate.addFirstListener(listener);
+			}
+		}
+
+		@Override
+		public void removeListener(RunListener listener) {
+			synchronized (fDelegate) {
+				fDelegate.removeListener(listener);
+			}
+		}
+
+		@Override
+		public void fireTestRunStarted(Description description) {
+			synchronized (fDelegate) {
+				fDelegate.fireTestRunStarted(description);
+			}
+		}
+
+		@Override
+		public void fireTestRunFinished(Result result) {
+			synchronized (fDelegate) {
+				fDelegate.fireTestRunFinished(result);
+			}
+		}
+
+		@Override
+		public void fireTestStarted(Description description)
+				throws StoppedByUserException {
+			synchronized (fDelegate) {
+				fDelegate.fireTestStarted(description);
+			}
+		}
+
+		@Override
+		public void fireTestFailure(Failure failure) {
+			synchronized (fDelegate) {
+				fDelegate.fireTestFailure(failure);
+			}
+		}
+
+		@Override
+		public void fireTestAssumptionFailed(Failure failure) {
+			synchronized (fDelegate) {
+				fDelegate.fireTestAssumptionFailed(failure);
+			}
+		}
+
+		@Override
+		public void fireTestIgnored(Description description) {
+			synchronized (fDelegate) {
+				fDelegate.fireTestIgnored(description);
+			}
+		}
+
+		@Override
+		public void fireTestFinished(Description description) {
+			synchronized (fDelegate) {
+				fDelegate.fireTestFinished(description);
+			}
+		}
+
+		@Override
+		public void pleaseStop() {
+			synchronized (fDelegate) {
+				fDelegate.pleaseStop();
+			}
+		}
+	}
+}
@@ -14,6 +14,7 @@ import org.junit.internal.runners.model.EachTestNotifier;
 import org.junit.internal.runners.model.MultipleFailureException;
 import org.junit.internal.runners.statements.RunAfters;
 import org.junit.internal.runners.statements.RunBefores;
+import org.junit.rules.TestTimings;
 import org.junit.runner.Description;
 import org.junit.runner.Runner;
 import org.junit.runner.manipulation.Filter;
@@ -37,7 +38,8 @@ import org.junit.runners.model.TestClass;
  * must implement finding the children of the node, describing each child, and
  * running each child. ParentRunner will filter and sort children, handle
  * {@code @BeforeClass} and {@code @AfterClass} methods, create a composite
- * {@link Description}, and run children sequentially.
+ * {@link Description}, and run children sequentially, or concurrently if the
+ * class is annotated with {@link ParallelScheduler.Concurrent}.
  */
 public abstract class ParentRunner<T> extends Runner implements Filterable,
 		Sortable {
@@ -62,8 +64,12 @@ public abstract class ParentRunner<T> extends Runner implements Filterable,
 	 * @throws InitializationError 
 	 */
 	protected ParentRunner(Class<?> testClass) throws InitializationError {
-		fTestClass= new TestClass(testClass);
+		fTestClass= TestClassMetadata.forClass(testClass).getTestClass();
 		validate();
+		ParallelScheduler.Concurrent concurrent= testClass
+				.getAnnotation(ParallelScheduler.Concurrent.class);
+		if (concurrent != null)
+			fScheduler= new ParallelScheduler(concurrent.threads());
 	}
 
 	//
@@ -141,11 +147,38 @@ public abstract class ParentRunner<T> extends Runner implements Filterable,
 	 */
 	protected Statement classBlock(final RunNotifier notifier) {
 		Statement statement= childrenInvoker(notifier);
+		Stopwatch children= null;
+		if (TestTimings.getDefault() != null)
+			statement= children= new Stopwatch(statement);
 		statement= withBeforeClasses(statement);
 		statement= withAfterClasses(statement);
+		if (children != null)
+			statement= withClassTiming(children, statement);
 		return statement;
 	}
 
+	/**
+	 * Returns a {@link Statement}: run {@code statement} and record its time,
+	 * and the part not spent in {@code children}, as this class's entry in
+	 * {@link TestTimings#getDefault()}
+	 */
+	private Statement withClassTiming(final Stopwatch children,
+			final Statement statement) {
+		return new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				long start= System.nanoTime();
+				try {
+					statement.evaluate();
+				} finally {
+					long nanos= System.nanoTime() - start;
+					TestTimings.getDefault().recordClass(getName(), nanos,
+							nanos - children.getNanos());
+				}
+			}
+		};
+	}
+
 	/**
 	 * Returns a {@link Statement}: run all non-overridden {@code @BeforeClass} methods on this class
 	 * and superclasses before executing {@code statement}; if any throws an
@@ -186,7 +219,10 @@ public abstract class ParentRunner<T> extends Runner implements Filterable,
 		};
 	}
 
-	private void runChildren(final RunNotifier notifier) {
+	private void runChildren(RunNotifier runNotifier) {
+		final RunNotifier notifier= fScheduler instanceof ParallelScheduler
+				? new ParallelScheduler.SynchronizedRunNotifier(runNotifier)
+				: runNotifier;
 		for (final T each : getFilteredChildren())
 			fScheduler.schedule(new Runnable() {			
 				public void run() {
@@ -300,13 +336,54 @@ public abstract class ParentRunner<T> extends Runner implements Filterable,
 	}
 
 	private Comparator<? super T> comparator() {
+		final Comparator<Description> order= childOrder();
 		return new Comparator<T>() {
 			public int compare(T o1, T o2) {
-				return fSorter.compare(describeChild(o1), describeChild(o2));
+				return order.compare(describeChild(o1), describeChild(o2));
 			}
 		};
 	}
 
+	/**
+	 * Concurrent children with no explicit sorter start slowest first, by
+	 * {@link TestTimings}, so the run is not held up by one long child
+	 * started last
+	 */
+	private Comparator<Description> childOrder() {
+		TestTimings timings= TestTimings.getDefault();
+		if (fSorter == Sorter.NULL && timings != null
+				&& fScheduler instanceof ParallelScheduler)
+			return timings.slowestFirst();
+		return fSorter;
+	}
+
+	/**
+	 * A {@link Statement} that remembers how long its last evaluation took
+	 */
+	protected static class Stopwatch extends Statement {
+		private final Statement fNext;
+
+		private volatile long fNanos;
+
+		public Stopwatch(Statement next) {
+			fNext= next;
+		}
+
+		@Override
+		public void evaluate() throws Throwable {
+			long start= System.nanoTime();
+			try {
+				fNext.evaluate();
+			} finally {
+				fNanos= System.nanoTime() - start;
+			}
+		}
+
+		public long getNanos() {
+			return fNanos;
+		}
+	}
+
 	/**
 	 * Sets a scheduler that determines the order and parallelization
 	 * of children.  Highly experimental feature that may change.
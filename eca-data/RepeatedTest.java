@@ -1,14 +1,37 @@
 package junit.extensions;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.AssertionFailedError;
 import junit.framework.Test;
 import junit.framework.TestResult;
 
 /**
  * A Decorator that runs a test repeatedly.
- * 
+ * <p>
+ * The latency of every repetition is recorded; {@link #getStatistics()}
+ * summarizes the last run. Repetitions can be spread over several threads
+ * with {@link #setThreads(int)}, preceded by unmeasured warm-up runs with
+ * {@link #setWarmUp(int)}, and checked against latency limits with
+ * {@link #failIfPercentileAbove(double, long)}; a limit that is exceeded is
+ * reported as a failure of this test.
+ * <p>
+ * When run on several threads the decorated test instance is shared, so it
+ * must be safe to run concurrently.
  */
 public class RepeatedTest extends TestDecorator {
 	private int fTimesRepeat;
+	private int fThreads= 1;
+	private int fWarmUp= 0;
+	private List<Double> fLimitPercentiles= new ArrayList<Double>();
+	private List<Long> fLimitNanos= new ArrayList<Long>();
+	private Statistics fStatistics;
 
 	public RepeatedTest(Test test, int repeat) {
 		super(test);
@@ -17,6 +40,44 @@ public class RepeatedTest extends TestDecorator {
 		fTimesRepeat= repeat;
 	}
 
+	/**
+	 * Sets how many threads share the repetitions. Defaults to 1, which runs
+	 * them on the calling thread.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Thread count must be >= 1");
+		fThreads= threads;
+	}
+
+	/**
+	 * Sets how many runs precede the measured repetitions. Their outcome is
+	 * not reported and their latency is not recorded.
+	 */
+	public void setWarmUp(int warmUp) {
+		if (warmUp < 0)
+			throw new IllegalArgumentException("Warm-up count must be >= 0");
+		fWarmUp= warmUp;
+	}
+
+	/**
+	 * Fails this test if the given latency percentile (0-100) of a run
+	 * exceeds {@code maxNanos}
+	 */
+	public void failIfPercentileAbove(double percentile, long maxNanos) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Percentile must be within 0..100");
+		fLimitPercentiles.add(percentile);
+		fLimitNanos.add(maxNanos);
+	}
+
+	/**
+	 * Returns the latencies of the last run, or null before the first run
+	 */
+	public Statistics getStatistics() {
+		return fStatistics;
+	}
+
 	@Override
 	public int countTestCases() {
 		return super.countTestCases() * fTimesRepeat;
@@ -24,10 +85,73 @@ public class RepeatedTest extends TestDecorator {
 
 	@Override
 	public void run(TestResult result) {
-		for (int i= 0; i < fTimesRepeat; i++) {
-			if (result.shouldStop())
+		TestResult warmUpResult= new TestResult();
+		for (int i= 0; i < fWarmUp; i++)
+			super.run(warmUpResult);
+
+		final long[] latencies= new long[fTimesRepeat];
+		final AtomicInteger completed= new AtomicInteger();
+		if (fThreads == 1)
+			runRepetitions(result, latencies, new AtomicInteger(), completed);
+		else if (!runConcurrently(result, latencies, completed))
+			return;
+
+		long[] measured= new long[completed.get()];
+		System.arraycopy(latencies, 0, measured, 0, measured.length);
+		fStatistics= new Statistics(measured);
+		checkLimits(result);
+	}
+
+	/**
+	 * Returns false if the calling thread was interrupted while waiting
+	 */
+	private boolean runConcurrently(final TestResult result, final long[] latencies,
+			final AtomicInteger completed) {
+		final AtomicInteger next= new AtomicInteger();
+		ExecutorService executor= Executors.newFixedThreadPool(fThreads);
+		for (int i= 0; i < fThreads; i++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					runRepetitions(result, latencies, next, completed);
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				// keep waiting; repetitions stop on result.stop()
+			}
+			return true;
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Takes repetition numbers from {@code next} until all are taken or the
+	 * result asks to stop
+	 */
+	private void runRepetitions(TestResult result, long[] latencies,
+			AtomicInteger next, AtomicInteger completed) {
+		for (int i= next.getAndIncrement(); i < fTimesRepeat; i= next.getAndIncrement()) {
+			if (result.shouldStop() || Thread.currentThread().isInterrupted())
 				break;
+			long start= System.nanoTime();
 			super.run(result);
+			latencies[completed.getAndIncrement()]= System.nanoTime() - start;
+		}
+	}
+
+	private void checkLimits(TestResult result) {
+		for (int i= 0; i < fLimitPercentiles.size(); i++) {
+			long actual= fStatistics.getPercentile(fLimitPercentiles.get(i));
+			if (actual > fLimitNanos.get(i))
+				result.addFailure(this, new AssertionFailedError("p"
+						+ fLimitPercentiles.get(i) + " latency was " + actual
+						+ "ns, limit " + fLimitNanos.get(i) + "ns; "
+						+ fStatistics));
 		}
 	}
 
@@ -35,4 +159,52 @@ public class RepeatedTest extends TestDecorator {
 	public String toString() {
 		return super.toString() + "(repeated)";
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Latency distribution of the repetitions of one run
+	 */
+	public static class Statistics {
+		private final long[] fSorted;
+
+		Statistics(long[] latencies) {
+			fSorted= latencies;
+			Arrays.sort(fSorted);
+		}
+
+		public int getCount() {
+			return fSorted.length;
+		}
+
+		/**
+		 * Returns the latency in nanoseconds that {@code percentile} percent
+		 * of the repetitions did not exceed (nearest rank), or 0 if none ran
+		 */
+		public long getPercentile(double percentile) {
+			if (fSorted.length == 0)
+				return 0;
+			int rank= (int) Math.ceil(percentile / 100 * fSorted.length);
+			return fSorted[Math.max(0, Math.min(rank, fSorted.length) - 1)];
+		}
+
+		public long getMax() {
+			return fSorted.length == 0 ? 0 : fSorted[fSorted.length - 1];
+		}
+
+		public long getMean() {
+			if (fSorted.length == 0)
+				return 0;
+			long total= 0;
+			for (long each : fSorted)
+				total+= each;
+			return total / fSorted.length;
+		}
+
+		@Override
+		public String toString() {
+			return "n=" + getCount() + " mean=" + getMean() + "ns p50="
+					+ getPercentile(50) + "ns p95=" + getPercentile(95)
+					+ "ns p99=" + getPercentile(99) + "ns max=" + getMax()
+					+ "ns";
+		}
+	}
+}
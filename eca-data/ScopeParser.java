@@ -66,19 +66,108 @@ public class ScopeParser {
 		return parse(action, s, ',', errMgr);
 	}
 
+	/** Split s at top-level separators and parse each declaration, in one
+	 *  pass over the text.  Same results as splitDecls followed by
+	 *  parseAttributeDef, but declarations are tracked as offsets into s and
+	 *  strings are only created for the final name, type, init value and decl.
+	 */
     public static AttributeDict parse(@Nullable ActionAST action, String s, char separator, ErrorManager errMgr) {
         AttributeDict dict = new AttributeDict();
-		List<Pair<String, Integer>> decls = splitDecls(s, separator);
-		for (Pair<String, Integer> decl : decls) {
-//            System.out.println("decl="+decl);
-            if ( decl.a.trim().length()>0 ) {
-                Attribute a = parseAttributeDef(action, decl, errMgr);
-                dict.add(a);
-            }
+		if ( s==null ) return dict;
+		// offsets are into the text without // comments, as for splitDecls
+		String text = s.indexOf("//")>=0 ? s.replaceAll("//[^\\n]*", "") : s;
+		ActionPositions positions = action!=null ? new ActionPositions(action) : null;
+		int n = text.length();
+		int lastGT = text.lastIndexOf('>');
+		int p = 0;
+		int last = p;
+		while ( p<n ) {
+			int next = skipElement(text, p, lastGT);
+			// a separator is a single char not opening a string or group
+			if ( next==p+1 && text.charAt(p)==separator ) {
+				addAttributeDef(dict, action, text, last, p, positions, errMgr);
+				last = next;
+			}
+			p = next;
+		}
+		if ( p<=n ) { // else an unterminated string or group swallowed the rest
+			addAttributeDef(dict, action, text, last, p, positions, errMgr);
 		}
         return dict;
     }
 
+	/** Trim text[start..stop) and add it to dict if it's not empty. */
+	private static void addAttributeDef(AttributeDict dict, @Nullable ActionAST action,
+										String text, int start, int stop,
+										@Nullable ActionPositions positions,
+										ErrorManager errMgr)
+	{
+		int index = start;
+		while ( index<stop && Character.isWhitespace(text.charAt(index)) ) {
+			index++;
+		}
+		int declStart = trimStart(text, start, stop);
+		int declStop = trimStop(text, declStart, stop);
+		if ( declStart<declStop ) {
+			Attribute a = parseAttributeDef(action, text, declStart, declStop, index, positions, errMgr);
+			if ( a!=null ) dict.add(a);
+		}
+	}
+
+	/** Skip the char, string or (), {}, [] or <> group at p in text,
+	 *  returning the index after it.  Like _splitArgumentList, a '<'
+	 *  only opens a group if there's a '>' somewhere after it.
+	 */
+	private static int skipElement(String text, int p, int lastGT) {
+		char c = text.charAt(p);
+		switch ( c ) {
+			case '\'' :
+			case '"' :
+				return skipString(text, p, c);
+			case '(' :
+				return skipGroup(text, p+1, ')', lastGT);
+			case '{' :
+				return skipGroup(text, p+1, '}', lastGT);
+			case '<' :
+				return lastGT>p ? skipGroup(text, p+1, '>', lastGT) : p+1;
+			case '[' :
+				return skipGroup(text, p+1, ']', lastGT);
+			default :
+				return p+1;
+		}
+	}
+
+	private static int skipGroup(String text, int p, char targetChar, int lastGT) {
+		int n = text.length();
+		while ( p<n && text.charAt(p)!=targetChar ) {
+			p = skipElement(text, p, lastGT);
+		}
+		return p+1;
+	}
+
+	private static int skipString(String text, int p, char quote) {
+		int n = text.length();
+		p++;
+		while ( p<n && text.charAt(p)!=quote ) {
+			if ( text.charAt(p)=='\\' && (p+1)<n && text.charAt(p+1)==quote ) {
+				p++; // skip escaped quote
+			}
+			p++;
+		}
+		return p+1;
+	}
+
+	/** Same as String.trim() on text[start..stop) */
+	private static int trimStart(String text, int start, int stop) {
+		while ( start<stop && text.charAt(start)<=' ' ) start++;
+		return start;
+	}
+
+	private static int trimStop(String text, int start, int stop) {
+		while ( stop>start && text.charAt(stop-1)<=' ' ) stop--;
+		return stop;
+	}
+
     /** For decls like "String foo" or "char *foo32[]" compute the ID
      *  and type declarations.  Also handle "int x=3" and 'T t = new T("foo")'
      *  but if the separator is ',' you cannot use ',' in the initvalue
@@ -86,41 +175,63 @@ public class ScopeParser {
      */
     public static Attribute parseAttributeDef(@Nullable ActionAST action, @NotNull Pair<String, Integer> decl, ErrorManager errMgr) {
         if ( decl.a==null ) return null;
+		ActionPositions positions = action!=null ? new ActionPositions(action) : null;
+		return parseAttributeDef(action, decl.a, 0, decl.a.length(), decl.b, positions, errMgr);
+	}
+
+	/** Parse the decl text[declStart..declStop).  declIndex is the offset
+	 *  of the decl in the action text without comments, used to position
+	 *  the attribute's token.
+	 */
+	private static Attribute parseAttributeDef(@Nullable ActionAST action,
+											   String text, int declStart, int declStop,
+											   int declIndex,
+											   @Nullable ActionPositions positions,
+											   ErrorManager errMgr)
+	{
         Attribute attr = new Attribute();
         boolean inID = false;
         int start = -1;
-        int rightEdgeOfDeclarator = decl.a.length()-1;
-        int equalsIndex = decl.a.indexOf('=');
-        if ( equalsIndex>0 ) {
+        int rightEdgeOfDeclarator = declStop-1;
+		int equalsIndex = -1;
+		for (int i=declStart; i<declStop; i++) {
+			if ( text.charAt(i)=='=' ) {
+				equalsIndex = i;
+				break;
+			}
+		}
+        if ( equalsIndex>declStart ) {
             // everything after the '=' is the init value
-            attr.initValue = decl.a.substring(equalsIndex+1,decl.a.length());
+            attr.initValue = text.substring(equalsIndex+1,declStop);
             rightEdgeOfDeclarator = equalsIndex-1;
         }
         // walk backwards looking for start of an ID
-        for (int i=rightEdgeOfDeclarator; i>=0; i--) {
+        for (int i=rightEdgeOfDeclarator; i>=declStart; i--) {
             // if we haven't found the end yet, keep going
-            if ( !inID && Character.isLetterOrDigit(decl.a.charAt(i)) ) {
+            if ( !inID && Character.isLetterOrDigit(text.charAt(i)) ) {
                 inID = true;
             }
             else if ( inID &&
-                      !(Character.isLetterOrDigit(decl.a.charAt(i))||
-                       decl.a.charAt(i)=='_') ) {
+                      !(Character.isLetterOrDigit(text.charAt(i))||
+                       text.charAt(i)=='_') ) {
                 start = i+1;
                 break;
             }
         }
         if ( start<0 && inID ) {
-            start = 0;
+            start = declStart;
         }
         if ( start<0 ) {
+			Pair<String, Integer> decl = new Pair<String, Integer>(text.substring(declStart, declStop), declIndex);
             errMgr.toolError(ErrorType.CANNOT_FIND_ATTRIBUTE_NAME_IN_DECL,decl);
+			return null;
         }
         // walk forwards looking for end of an ID
         int stop=-1;
         for (int i=start; i<=rightEdgeOfDeclarator; i++) {
             // if we haven't found the end yet, keep going
-            if ( !(Character.isLetterOrDigit(decl.a.charAt(i))||
-                decl.a.charAt(i)=='_') )
+            if ( !(Character.isLetterOrDigit(text.charAt(i))||
+                text.charAt(i)=='_') )
             {
                 stop = i;
                 break;
@@ -131,48 +242,34 @@ public class ScopeParser {
         }
 
         // the name is the last ID
-        attr.name = decl.a.substring(start,stop);
+        attr.name = text.substring(start,stop);
 
-        // the type is the decl minus the ID (could be empty)
-        attr.type = decl.a.substring(0,start);
-        if ( stop<=rightEdgeOfDeclarator ) {
-            attr.type += decl.a.substring(stop,rightEdgeOfDeclarator+1);
-        }
-        attr.type = attr.type.trim();
-        if ( attr.type.length()==0 ) {
-            attr.type = null;
-        }
+        // the type is the decl minus the ID (could be empty), trimmed
+		int typeStart = trimStart(text, declStart, start);
+		int typeStop = trimStop(text, typeStart, start);
+		int suffixStart = trimStart(text, stop, rightEdgeOfDeclarator+1);
+		int suffixStop = trimStop(text, suffixStart, rightEdgeOfDeclarator+1);
+		if ( suffixStart==suffixStop ) {
+			attr.type = typeStart<typeStop ? text.substring(typeStart, typeStop) : null;
+		}
+		else if ( typeStart==typeStop ) {
+			attr.type = text.substring(suffixStart, suffixStop);
+		}
+		else {
+			attr.type = text.substring(typeStart, start) + text.substring(stop, suffixStop);
+		}
 
-        attr.decl = decl.a;
+        attr.decl = text.substring(declStart, declStop);
 
 		if (action != null) {
-			String actionText = action.getText();
-			int[] lines = new int[actionText.length()];
-			int[] charPositionInLines = new int[actionText.length()];
-			for (int i = 0, line = 0, col = 0; i < actionText.length(); i++, col++) {
-				lines[i] = line;
-				charPositionInLines[i] = col;
-				if (actionText.charAt(i) == '\n') {
-					line++;
-					col = -1;
-				}
-			}
-
-			int[] charIndexes = new int[actionText.length()];
-			for (int i = 0, j = 0; i < actionText.length(); i++, j++) {
-				charIndexes[j] = i;
-				if (i < actionText.length() - 1 && actionText.charAt(i) == '/' && actionText.charAt(i + 1) == '/') {
-					while (i < actionText.length() && actionText.charAt(i) != '\n') {
-						i++;
-					}
-				}
-			}
+			start -= declStart;
+			stop -= declStart;
 
-			int declOffset = charIndexes[decl.b];
-			int declLine = lines[declOffset + start];
+			int declOffset = positions.charIndexes[declIndex];
+			int declLine = positions.lines[declOffset + start];
 
 			int line = action.getToken().getLine() + declLine;
-			int charPositionInLine = charPositionInLines[declOffset + start];
+			int charPositionInLine = positions.charPositionInLines[declOffset + start];
 			if (declLine == 0) {
 				/* offset for the start position of the ARG_ACTION token, plus 1
 				 * since the ARG_ACTION text had the leading '[' stripped before
@@ -191,6 +288,40 @@ public class ScopeParser {
         return attr;
     }
 
+	/** Line and column of each char in an action's text, and where each
+	 *  char of the text with // comments removed came from.  Computed once
+	 *  per action rather than once per declaration.
+	 */
+	private static class ActionPositions {
+		final int[] lines;
+		final int[] charPositionInLines;
+		final int[] charIndexes;
+
+		ActionPositions(ActionAST action) {
+			String actionText = action.getText();
+			lines = new int[actionText.length()];
+			charPositionInLines = new int[actionText.length()];
+			for (int i = 0, line = 0, col = 0; i < actionText.length(); i++, col++) {
+				lines[i] = line;
+				charPositionInLines[i] = col;
+				if (actionText.charAt(i) == '\n') {
+					line++;
+					col = -1;
+				}
+			}
+
+			charIndexes = new int[actionText.length()];
+			for (int i = 0, j = 0; i < actionText.length(); i++, j++) {
+				charIndexes[j] = i;
+				if (i < actionText.length() - 1 && actionText.charAt(i) == '/' && actionText.charAt(i + 1) == '/') {
+					while (i < actionText.length() && actionText.charAt(i) != '\n') {
+						i++;
+					}
+				}
+			}
+		}
+	}
+
     /** Given an argument list like
      *
      *  x, (*a).foo(21,33), 3.2+1, '\n',
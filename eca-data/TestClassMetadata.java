@@ -0,0 +1,73 @@
+package org.junit.runners;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.runner.Runner;
+import org.junit.runners.model.TestClass;
+
+/**
+ * Process-wide cache of what runners learn about a test class by reflection:
+ * the annotation scan done by {@link TestClass} and the initialization errors
+ * found by each type of runner. Every runner for the same class in a VM
+ * shares one instance, so building many runners for one class (forks,
+ * filters, suites listing the class twice) scans and validates it only once.
+ * 
+ * Entries are held in a {@link WeakHashMap} keyed by class. The metadata
+ * refers back to its class, so it is held through a {@link SoftReference}:
+ * otherwise the value would keep its own key, and the class loader, alive.
+ */
+public class TestClassMetadata {
+	private static final Map<Class<?>, Reference<TestClassMetadata>> fCache= new WeakHashMap<Class<?>, Reference<TestClassMetadata>>();
+
+	/**
+	 * Returns the shared metadata for {@code klass}. A {@code null} class
+	 * (used by suites built from runners) gets a fresh, uncached instance.
+	 */
+	public static TestClassMetadata forClass(Class<?> klass) {
+		if (klass == null)
+			return new TestClassMetadata(new TestClass(null));
+		synchronized (fCache) {
+			Reference<TestClassMetadata> ref= fCache.get(klass);
+			TestClassMetadata metadata= ref == null ? null : ref.get();
+			if (metadata == null) {
+				metadata= new TestClassMetadata(new TestClass(klass));
+				fCache.put(klass, new SoftReference<TestClassMetadata>(metadata));
+			}
+			return metadata;
+		}
+	}
+
+	private final TestClass fTestClass;
+
+	private final ConcurrentMap<Class<?>, List<Throwable>> fErrorsByRunner= new ConcurrentHashMap<Class<?>, List<Throwable>>();
+
+	private TestClassMetadata(TestClass testClass) {
+		fTestClass= testClass;
+	}
+
+	public TestClass getTestClass() {
+		return fTestClass;
+	}
+
+	/**
+	 * Returns the errors a runner of type {@code runnerType} found when it
+	 * validated this class, or {@code null} if no such runner has done so yet.
+	 */
+	public List<Throwable> getInitializationErrors(Class<? extends Runner> runnerType) {
+		return fErrorsByRunner.get(runnerType);
+	}
+
+	public void putInitializationErrors(Class<? extends Runner> runnerType,
+			List<Throwable> errors) {
+		fErrorsByRunner.putIfAbsent(runnerType, Collections
+				.unmodifiableList(new ArrayList<Throwable>(errors)));
+	}
+}
@@ -0,0 +1,75 @@
+package org.junit.rules;
+
+import org.junit.internal.AssumptionViolatedException;
+import org.junit.runner.Description;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+
+/**
+ * TestTimer is a Rule that records how long each test method takes, and
+ * whether it passed, in a {@link TestTimings} store:
+ *
+ * <pre>
+ * public static class SlowTests {
+ * 	private static final TestTimings timings= new TestTimings(new File(
+ * 			&quot;target/timings.txt&quot;));
+ *
+ * 	&#064;Rule
+ * 	public MethodRule timer= new TestTimer(timings);
+ *
+ * 	&#064;AfterClass
+ * 	public static void saveTimings() throws IOException {
+ * 		timings.save();
+ * 	}
+ * }
+ * </pre>
+ *
+ * The time includes {@code @Before} and {@code @After} methods. Setting the
+ * {@code junit.timings} system property makes every runner record timings,
+ * split into test body and overhead, without this rule.
+ */
+public class TestTimer extends TestWatchman {
+	private final TestTimings fTimings;
+
+	private Class<?> fTestClass;
+
+	private long fStarted;
+
+	private Boolean fPassed;
+
+	public TestTimer(TestTimings timings) {
+		fTimings= timings;
+	}
+
+	@Override
+	public Statement apply(Statement base, FrameworkMethod method,
+			Object target) {
+		fTestClass= target.getClass();
+		return super.apply(base, method, target);
+	}
+
+	@Override
+	public void starting(FrameworkMethod method) {
+		fPassed= Boolean.FALSE;
+		fStarted= System.nanoTime();
+	}
+
+	@Override
+	public void succeeded(FrameworkMethod method) {
+		fPassed= Boolean.TRUE;
+	}
+
+	@Override
+	public void failed(Throwable e, FrameworkMethod method) {
+		// a failed assumption is neither a pass nor a failure
+		if (e instanceof AssumptionViolatedException)
+			fPassed= null;
+	}
+
+	@Override
+	public void finished(FrameworkMethod method) {
+		long nanos= System.nanoTime() - fStarted;
+		fTimings.recordTest(Description.createTestDescription(fTestClass,
+				method.getName()), nanos, 0, fPassed);
+	}
+}
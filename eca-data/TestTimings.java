@@ -0,0 +1,403 @@
+package org.junit.rules;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestListener;
+
+import org.junit.internal.AssumptionViolatedException;
+import org.junit.runner.Description;
+
+/**
+ * Collects how long tests and test classes take, how often they fail and how
+ * often their outcome flips between runs (flakes), and keeps the numbers in
+ * a local file across runs.
+ *
+ * Tests are keyed by their {@link Description#getDisplayName()}, e.g.
+ * {@code method(com.example.FooTest)}; classes by their class name. Several
+ * forks may share one file: {@link #save()} locks it, re-reads it and adds
+ * only what this instance recorded since it was loaded.
+ *
+ * Schedulers use {@link #slowestFirst()} to start the longest tests first,
+ * which shortens the wall time of a parallel run.
+ *
+ * Setting the system property {@code junit.timings} to a file name enables
+ * {@link #getDefault()}; it is saved when the VM exits.
+ */
+public class TestTimings {
+	/**
+	 * Statistics for one test or class
+	 */
+	public static class Stats {
+		private int fRuns;
+
+		private int fFailures;
+
+		private int fFlakes;
+
+		private long fTotalNanos;
+
+		private long fOverheadNanos;
+
+		private long fLastNanos;
+
+		private Boolean fLastPassed;
+
+		public int getRuns() {
+			return fRuns;
+		}
+
+		public int getFailures() {
+			return fFailures;
+		}
+
+		/**
+		 * Returns how many times the outcome differed from the one before
+		 */
+		public int getFlakes() {
+			return fFlakes;
+		}
+
+		public long getTotalNanos() {
+			return fTotalNanos;
+		}
+
+		/**
+		 * Returns the time spent outside the test bodies: {@code @Before} and
+		 * {@code @After} for a test, {@code @BeforeClass} and
+		 * {@code @AfterClass} for a class
+		 */
+		public long getOverheadNanos() {
+			return fOverheadNanos;
+		}
+
+		public long getLastNanos() {
+			return fLastNanos;
+		}
+
+		public long getMeanNanos() {
+			return fRuns == 0 ? 0 : fTotalNanos / fRuns;
+		}
+
+		private void record(long nanos, long overheadNanos, Boolean passed) {
+			fRuns++;
+			fTotalNanos+= nanos;
+			fOverheadNanos+= overheadNanos;
+			fLastNanos= nanos;
+			if (passed != null) {
+				if (!passed)
+					fFailures++;
+				if (fLastPassed != null && !fLastPassed.equals(passed))
+					fFlakes++;
+				fLastPassed= passed;
+			}
+		}
+
+		private void add(Stats other) {
+			fRuns+= other.fRuns;
+			fFailures+= other.fFailures;
+			fFlakes+= other.fFlakes;
+			fTotalNanos+= other.fTotalNanos;
+			fOverheadNanos+= other.fOverheadNanos;
+			if (other.fRuns > 0)
+				fLastNanos= other.fLastNanos;
+			if (other.fLastPassed != null)
+				fLastPassed= other.fLastPassed;
+		}
+	}
+
+	private static volatile TestTimings fDefault= null;
+
+	private static volatile boolean fDefaultInitialized= false;
+
+	/**
+	 * Returns the store named by the {@code junit.timings} system property,
+	 * or {@code null} if it is not set. The property is read on the first
+	 * call only; later calls, made for every test, take no lock.
+	 */
+	public static TestTimings getDefault() {
+		if (!fDefaultInitialized) {
+			synchronized (TestTimings.class) {
+				if (!fDefaultInitialized) {
+					String fileName= System.getProperty("junit.timings");
+					if (fileName != null) {
+						TestTimings timings= new TestTimings(new File(fileName));
+						timings.saveOnExit();
+						fDefault= timings;
+					}
+					fDefaultInitialized= true;
+				}
+			}
+		}
+		return fDefault;
+	}
+
+	private final File fFile;
+
+	/** Loaded from fFile, or from the last save */
+	private Map<String, Stats> fSaved= new HashMap<String, Stats>();
+
+	/** Recorded since then */
+	private Map<String, Stats> fRecorded= new HashMap<String, Stats>();
+
+	/**
+	 * Creates a store backed by {@code file}, loading it if it exists
+	 */
+	public TestTimings(File file) {
+		fFile= file;
+		try {
+			fSaved= read(file);
+		} catch (IOException e) {
+			// start over
+		}
+	}
+
+	/**
+	 * Records one run of a test
+	 *
+	 * @param overheadNanos
+	 *            the part of {@code nanos} spent in {@code @Before} and
+	 *            {@code @After}
+	 * @param passed
+	 *            the outcome, or {@code null} if an assumption failed and the
+	 *            test neither passed nor failed
+	 */
+	public synchronized void recordTest(Description description, long nanos,
+			long overheadNanos, Boolean passed) {
+		record(description.getDisplayName(), nanos, overheadNanos, passed);
+	}
+
+	/**
+	 * Records one run of a whole test class
+	 *
+	 * @param overheadNanos
+	 *            the part of {@code nanos} spent in {@code @BeforeClass} and
+	 *            {@code @AfterClass}
+	 */
+	public synchronized void recordClass(String className, long nanos,
+			long overheadNanos) {
+		record(className, nanos, overheadNanos, null);
+	}
+
+	private void record(String key, long nanos, long overheadNanos,
+			Boolean passed) {
+		Stats recorded= fRecorded.get(key);
+		if (recorded == null) {
+			recorded= new Stats();
+			Stats saved= fSaved.get(key);
+			if (saved != null)
+				recorded.fLastPassed= saved.fLastPassed;
+			fRecorded.put(key, recorded);
+		}
+		recorded.record(nanos, overheadNanos, passed);
+	}
+
+	/**
+	 * Returns saved and recorded statistics for a test display name or class
+	 * name, or {@code null} if it has never been run
+	 */
+	public synchronized Stats getStats(String key) {
+		Stats saved= fSaved.get(key);
+		Stats recorded= fRecorded.get(key);
+		if (saved == null && recorded == null)
+			return null;
+		Stats result= new Stats();
+		if (saved != null)
+			result.add(saved);
+		if (recorded != null)
+			result.add(recorded);
+		return result;
+	}
+
+	/**
+	 * Returns the mean duration of the test or class described, or
+	 * {@code -1} if it is unknown
+	 */
+	public long expectedNanos(Description description) {
+		Stats stats= getStats(description.getDisplayName());
+		return stats == null ? -1 : stats.getMeanNanos();
+	}
+
+	/**
+	 * Orders descriptions longest expected duration first, with never-run
+	 * tests ahead of all others since they may be the longest
+	 * (longest-processing-time-first scheduling).
+	 */
+	public Comparator<Description> slowestFirst() {
+		return new Comparator<Description>() {
+			public int compare(Description o1, Description o2) {
+				long n1= expectedNanos(o1);
+				long n2= expectedNanos(o2);
+				if (n1 < 0)
+					n1= Long.MAX_VALUE;
+				if (n2 < 0)
+					n2= Long.MAX_VALUE;
+				return n1 > n2 ? -1 : (n1 == n2 ? 0 : 1);
+			}
+		};
+	}
+
+	/**
+	 * Returns a JUnit 3 listener that records the tests it sees
+	 */
+	public TestListener asTestListener() {
+		return new TestListener() {
+			private final ThreadLocal<Long> fStarted= new ThreadLocal<Long>();
+
+			private final ThreadLocal<Boolean> fPassed= new ThreadLocal<Boolean>();
+
+			public void startTest(Test test) {
+				fPassed.set(Boolean.TRUE);
+				fStarted.set(System.nanoTime());
+			}
+
+			public void addError(Test test, Throwable t) {
+				fPassed.set(t instanceof AssumptionViolatedException ? null
+						: Boolean.FALSE);
+			}
+
+			public void addFailure(Test test, AssertionFailedError t) {
+				fPassed.set(Boolean.FALSE);
+			}
+
+			public void endTest(Test test) {
+				Long started= fStarted.get();
+				if (started == null)
+					return;
+				long nanos= System.nanoTime() - started;
+				fStarted.remove();
+				recordTest(describe(test), nanos, 0, fPassed.get());
+			}
+		};
+	}
+
+	/**
+	 * Returns the {@link Description} JUnit 4 gives a JUnit 3 test
+	 */
+	public static Description describe(Test test) {
+		if (test instanceof TestCase)
+			return Description.createTestDescription(test.getClass(),
+					((TestCase) test).getName());
+		return Description.createSuiteDescription(test.toString());
+	}
+
+	/**
+	 * Adds what was recorded since the last save to the file, merging with
+	 * whatever other forks have saved in the meantime.
+	 */
+	public synchronized void save() throws IOException {
+		File parent= fFile.getAbsoluteFile().getParentFile();
+		if (parent != null)
+			parent.mkdirs();
+		RandomAccessFile lockFile= new RandomAccessFile(new File(fFile
+				.getPath()
+				+ ".lock"), "rw");
+		try {
+			FileLock lock= lockFile.getChannel().lock();
+			try {
+				Map<String, Stats> merged= fFile.exists() ? read(fFile)
+						: new HashMap<String, Stats>();
+				for (Map.Entry<String, Stats> each : fRecorded.entrySet()) {
+					Stats stats= merged.get(each.getKey());
+					if (stats == null) {
+						stats= new Stats();
+						merged.put(each.getKey(), stats);
+					}
+					stats.add(each.getValue());
+				}
+				write(merged);
+				fSaved= merged;
+				fRecorded= new HashMap<String, Stats>();
+			} finally {
+				lock.release();
+			}
+		} finally {
+			lockFile.close();
+		}
+	}
+
+	private void saveOnExit() {
+		Runtime.getRuntime().addShutdownHook(new Thread("junit timings") {
+			@Override
+			public void run() {
+				try {
+					save();
+				} catch (IOException e) {
+					System.err.println("Could not save test timings to "
+							+ fFile + ": " + e);
+				}
+			}
+		});
+	}
+
+	private void write(Map<String, Stats> all) throws IOException {
+		File temp= new File(fFile.getPath() + ".tmp");
+		PrintWriter writer= new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(temp), "UTF-8"));
+		try {
+			for (Map.Entry<String, Stats> each : all.entrySet()) {
+				Stats s= each.getValue();
+				writer.println(each.getKey() + "\t" + s.fRuns + "\t"
+						+ s.fFailures + "\t" + s.fFlakes + "\t"
+						+ s.fTotalNanos + "\t" + s.fOverheadNanos + "\t"
+						+ s.fLastNanos + "\t" + s.fLastPassed);
+			}
+		} finally {
+			writer.close();
+		}
+		if (writer.checkError())
+			throw new IOException("Could not write " + temp);
+		if (!temp.renameTo(fFile)) {
+			// some platforms won't rename over an existing file
+			fFile.delete();
+			if (!temp.renameTo(fFile))
+				throw new IOException("Could not rename " + temp + " to "
+						+ fFile);
+		}
+	}
+
+	private static Map<String, Stats> read(File file) throws IOException {
+		Map<String, Stats> result= new HashMap<String, Stats>();
+		BufferedReader reader= new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+		try {
+			for (String line= reader.readLine(); line != null; line= reader
+					.readLine()) {
+				String[] fields= line.split("\t");
+				if (fields.length != 8)
+					continue;
+				try {
+					Stats s= new Stats();
+					s.fRuns= Integer.parseInt(fields[1]);
+					s.fFailures= Integer.parseInt(fields[2]);
+					s.fFlakes= Integer.parseInt(fields[3]);
+					s.fTotalNanos= Long.parseLong(fields[4]);
+					s.fOverheadNanos= Long.parseLong(fields[5]);
+					s.fLastNanos= Long.parseLong(fields[6]);
+					s.fLastPassed= "null".equals(fields[7]) ? null : Boolean
+							.valueOf(fields[7]);
+					result.put(fields[0], s);
+				} catch (NumberFormatException e) {
+					// skip a damaged line
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return result;
+	}
+}